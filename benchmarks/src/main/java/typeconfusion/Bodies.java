@@ -0,0 +1,76 @@
+package typeconfusion;
+
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates base requests with a given number of parameters, padded with string values up to a body size.
+ * Bodies are larger than requested when the parameters alone do not fit.
+ */
+final class Bodies {
+
+    static final HttpService SERVICE = FakeHttp.service("target.example", 443, true);
+
+    private Bodies() {
+    }
+
+    /**
+     * Name of the parameter the benchmarks mutate, the last one so searches cover the whole body.
+     */
+    static String targetName(int parameters) {
+        return "p" + (parameters - 1);
+    }
+
+    /**
+     * Base value of the target parameter, a string so every payload of the plan applies.
+     */
+    static String targetValue() {
+        return "needle";
+    }
+
+    /**
+     * A JSON object mixing string, number and bool properties; the target is the last property.
+     */
+    static String json(int bodyBytes, int parameters) {
+        var padding = padding(bodyBytes, parameters * 16, (parameters + 1) / 3);
+        var body = new StringBuilder(bodyBytes + 64).append('{');
+        for (int i = 0; i < parameters - 1; i++) {
+            body.append("\"p").append(i).append("\": ");
+            switch (i % 3) {
+                case 0 -> body.append('"').append(padding).append('"');
+                case 1 -> body.append(i);
+                default -> body.append(i % 2 == 0);
+            }
+            body.append(", ");
+        }
+        return body.append('"').append(targetName(parameters)).append("\": \"").append(targetValue()).append("\"}").toString();
+    }
+
+    static String urlEncoded(int bodyBytes, int parameters) {
+        var padding = padding(bodyBytes, parameters * 8, parameters - 1);
+        var body = new StringBuilder(bodyBytes + 64);
+        for (int i = 0; i < parameters - 1; i++)
+            body.append('p').append(i).append('=').append(padding).append('&');
+        return body.append(targetName(parameters)).append('=').append(targetValue()).toString();
+    }
+
+    static HttpRequest post(String contentType, String body) {
+        var raw = "POST /api/items HTTP/1.1\r\n"
+                + "Host: target.example\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "\r\n"
+                + body;
+        return FakeHttp.request(SERVICE, raw.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Filler shared by the padded parameters so the body reaches {@code bodyBytes} on top of {@code fixedBytes}.
+     */
+    private static String padding(int bodyBytes, int fixedBytes, int paddedParameters) {
+        var length = Math.max(1, (bodyBytes - fixedBytes) / Math.max(1, paddedParameters));
+        return "a".repeat(length);
+    }
+}
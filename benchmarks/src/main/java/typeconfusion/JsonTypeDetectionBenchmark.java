@@ -0,0 +1,60 @@
+package typeconfusion;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of finding a JSON parameter's type: the single-pass {@link JsonBodyIndex} against the per-insertion point
+ * regex search it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonTypeDetectionBenchmark {
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int bodyBytes;
+
+    @Param({"8", "64", "512"})
+    public int parameters;
+
+    private String body;
+    private byte[] bodyBytesRaw;
+    private JsonBodyIndex index;
+
+    @Setup
+    public void setUp() {
+        body = Bodies.json(bodyBytes, parameters);
+        bodyBytesRaw = body.getBytes(StandardCharsets.UTF_8);
+        index = JsonBodyIndex.parse(bodyBytesRaw);
+    }
+
+    @Benchmark
+    public JsonBodyIndex indexBody() {
+        return JsonBodyIndex.parse(bodyBytesRaw);
+    }
+
+    /**
+     * Lookup in an already indexed body, what every insertion point after the first pays.
+     */
+    @Benchmark
+    public Object findInIndex() {
+        return index.find(Bodies.targetName(parameters), Bodies.targetValue());
+    }
+
+    @Benchmark
+    public String legacyGetJsonPropertyType() throws JsonProcessingException {
+        return LegacyRewrites.getJsonPropertyType(body, Bodies.targetName(parameters), Bodies.targetValue());
+    }
+
+    @Benchmark
+    public String legacyGetJsonSerializedValue() throws JsonProcessingException {
+        return LegacyRewrites.getJsonSerializedValue(Bodies.targetValue());
+    }
+}
@@ -0,0 +1,71 @@
+package typeconfusion;
+
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.regex.Pattern;
+
+/**
+ * The regex and ObjectMapper based implementations the scanner used before the body index and splicer,
+ * kept as a baseline for the benchmarks.
+ */
+final class LegacyRewrites {
+
+    private LegacyRewrites() {
+    }
+
+    static String getJsonPropertyType(String json, String baseName, String baseValue) throws JsonProcessingException {
+        var mapper = new ObjectMapper();
+        var jsonValue = mapper.writeValueAsString(baseValue);
+
+        var pattern = Pattern.compile("\"" + baseName + "\"[\\s]*:[\\s]*" + jsonValue);
+        var matchFound = pattern.matcher(json).find();
+
+        return matchFound
+                ? "string"
+                : jsonValue.startsWith("{")
+                ? "object"
+                : jsonValue.startsWith("[")
+                ? "array"
+                : jsonValue.equals("true") || jsonValue.equals("false")
+                ? "bool"
+                : "number";
+    }
+
+    static String getJsonSerializedValue(String value) throws JsonProcessingException {
+        var mapper = new ObjectMapper();
+        return mapper.writeValueAsString(value);
+    }
+
+    static HttpRequest jsonArrayRewrite(HttpRequest baseRequest, String name, String baseValue) throws JsonProcessingException {
+        var payload = "\"" + name + "\":[" + getJsonSerializedValue(baseValue) + "]";
+        var modifiedBody = baseRequest.body()
+                .toString()
+                .replaceFirst("\"" + name + "\"[\\s]*:[\\s]*" + getJsonSerializedValue(baseValue), payload);
+        return baseRequest.withBody(modifiedBody);
+    }
+
+    static HttpRequest urlEncodedArrayRewrite(HttpRequest baseRequest, String name, String encodedValue) {
+        var payload = String.format("%s[]=%s&%s[]=%s2", name, encodedValue, name, encodedValue);
+        var modifiedBody = baseRequest.body()
+                .toString()
+                .replaceFirst(name + "=[^&#$]*", payload);
+        return baseRequest.withBody(modifiedBody);
+    }
+
+    static boolean detectChange(HttpRequestResponse baseRequestResponse, HttpRequestResponse checkRequestResponse) {
+        var baseResponse = baseRequestResponse.response();
+        var checkResponse = checkRequestResponse.response();
+
+        if (baseResponse.statusCode() != checkResponse.statusCode())
+            return true;
+
+        var baseResponseBodyLength = baseResponse.body().length();
+        var checkResponseBodyLength = checkResponse.body().length();
+
+        return baseResponseBodyLength > checkResponseBodyLength + checkResponseBodyLength / 100 * 40
+            || checkResponseBodyLength > baseResponseBodyLength + baseResponseBodyLength / 100 * 40;
+    }
+}
@@ -0,0 +1,81 @@
+package typeconfusion;
+
+import burp.api.montoya.http.message.requests.HttpRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building one array payload request: splicing over known offsets against the regex rewrite of the
+ * whole body it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBuildingBenchmark {
+
+    @Param({"json", "urlencoded"})
+    public String contentType;
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int bodyBytes;
+
+    @Param({"8", "64", "512"})
+    public int parameters;
+
+    private HttpRequest baseRequest;
+    private RequestSplicer splicer;
+    private int valueStart;
+    private int valueEnd;
+    private String replacement;
+
+    @Setup
+    public void setUp() {
+        FakeHttp.installObjectFactory();
+
+        var json = contentType.equals("json");
+        var body = json ? Bodies.json(bodyBytes, parameters) : Bodies.urlEncoded(bodyBytes, parameters);
+        baseRequest = Bodies.post(json ? "application/json" : "application/x-www-form-urlencoded", body);
+        splicer = new RequestSplicer(Bodies.SERVICE, baseRequest);
+
+        var name = Bodies.targetName(parameters);
+        var value = Bodies.targetValue();
+        if (json) {
+            var property = JsonBodyIndex.parse(baseRequest.body().getBytes()).find(name, value).orElseThrow();
+            valueStart = splicer.bodyOffset() + property.valueStart();
+            valueEnd = splicer.bodyOffset() + property.valueEnd();
+            replacement = "[" + splicer.sliceToString(valueStart, valueEnd) + "]";
+        } else {
+            valueStart = splicer.bodyOffset() + body.lastIndexOf(name + "=");
+            valueEnd = splicer.bodyOffset() + body.length();
+            replacement = name + "[]=" + value + "&" + name + "[]=" + value + "2";
+        }
+    }
+
+    /**
+     * Splicing with the splicer of the insertion point already built, as for every probe after the first.
+     */
+    @Benchmark
+    public HttpRequest splice() {
+        return splicer.splice(valueStart, valueEnd, replacement).request();
+    }
+
+    /**
+     * Splicing including the copy of the base request into a new splicer, as for the first probe.
+     */
+    @Benchmark
+    public HttpRequest spliceFromBaseRequest() {
+        return new RequestSplicer(Bodies.SERVICE, baseRequest).splice(valueStart, valueEnd, replacement).request();
+    }
+
+    @Benchmark
+    public HttpRequest legacyRegexRewrite() throws JsonProcessingException {
+        return contentType.equals("json")
+                ? LegacyRewrites.jsonArrayRewrite(baseRequest, Bodies.targetName(parameters), Bodies.targetValue())
+                : LegacyRewrites.urlEncodedArrayRewrite(baseRequest, Bodies.targetName(parameters), Bodies.targetValue());
+    }
+}
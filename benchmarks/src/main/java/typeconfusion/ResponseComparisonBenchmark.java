@@ -0,0 +1,67 @@
+package typeconfusion;
+
+import burp.api.montoya.http.message.HttpRequestResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@code detectChange}: one {@link ResponseSimilarity} comparison per comparator against the plain
+ * length comparison it replaced. Base fingerprints are cached after the first invocation, as during a scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseComparisonBenchmark {
+
+    @Param({"length", "headers", "simhash", "stripped"})
+    public String comparator;
+
+    @Param({"1024", "65536", "1048576", "10485760"})
+    public int bodyBytes;
+
+    private ResponseSimilarity similarity;
+    private HttpRequestResponse base;
+    private HttpRequestResponse check;
+
+    @Setup
+    public void setUp() {
+        FakeHttp.installObjectFactory();
+
+        similarity = new ResponseSimilarity(List.of(ResponseComparators.byName(comparator, 10)));
+
+        var request = Bodies.post("application/json", Bodies.json(1024, 8));
+        var headers = List.of(
+                FakeHttp.header("Content-Type", "text/html"),
+                FakeHttp.header("Date", "Thu, 01 Jan 2026 00:00:00 GMT"),
+                FakeHttp.header("X-Request-Id", "7f3a"));
+
+        base = FakeHttp.requestResponse(request, FakeHttp.response(200, headers, page(bodyBytes, Bodies.targetValue())), List.of());
+        check = FakeHttp.requestResponse(request, FakeHttp.response(200, headers, page(bodyBytes, "[\"needle\"]")), List.of());
+    }
+
+    @Benchmark
+    public boolean changed() {
+        return similarity.changed(base, check, null, Bodies.targetValue(), "[\"needle\"]");
+    }
+
+    @Benchmark
+    public boolean legacyDetectChange() {
+        return LegacyRewrites.detectChange(base, check);
+    }
+
+    /**
+     * An HTML page of roughly {@code bodyBytes} that reflects {@code value} once.
+     */
+    private static byte[] page(int bodyBytes, String value) {
+        var page = new StringBuilder(bodyBytes + 64).append("<html><body><p>You searched for ").append(value).append("</p><ul>");
+        for (int i = 0; page.length() < bodyBytes; i++)
+            page.append("<li>item ").append(i).append(" in the catalogue</li>");
+        return page.append("</ul></body></html>").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,153 @@
+package typeconfusion;
+
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.core.Registration;
+import burp.api.montoya.extension.Extension;
+import burp.api.montoya.http.Http;
+import burp.api.montoya.http.message.HttpHeader;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.logging.Logging;
+import burp.api.montoya.persistence.Persistence;
+import burp.api.montoya.persistence.Preferences;
+import burp.api.montoya.scanner.Scanner;
+import burp.api.montoya.ui.UserInterface;
+import burp.api.montoya.utilities.URLUtils;
+import burp.api.montoya.utilities.Utilities;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A {@link MontoyaApi} that runs outside Burp: {@code http().sendRequest} goes over a real socket through
+ * {@link HttpClient}, preferences are empty so settings come from system properties, and the static Montoya
+ * factories resolve to {@link FakeHttp}.
+ */
+final class FakeMontoya {
+
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("host", "content-length", "connection", "expect", "upgrade", "keep-alive", "transfer-encoding");
+
+    private final HttpClient client;
+    private final boolean verbose;
+    private final AtomicLong logLines = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    FakeMontoya(boolean verbose)
+    {
+        this.verbose = verbose;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newCachedThreadPool(runnable -> {
+                    var thread = new Thread(runnable, "harness-http");
+                    thread.setDaemon(true);
+                    return thread;
+                }))
+                .build();
+    }
+
+    MontoyaApi api() {
+        var registration = service(Registration.class, Map.of("isRegistered", args -> true));
+
+        var logging = service(Logging.class, Map.of(
+                "logToOutput", args -> log(args[0]),
+                "logToError", args -> log(args[0])));
+        var preferences = service(Preferences.class, Map.of());
+        var persistence = service(Persistence.class, Map.of("preferences", args -> preferences));
+        var urlUtils = service(URLUtils.class, Map.of(
+                "encode", args -> URLEncoder.encode((String) args[0], StandardCharsets.UTF_8),
+                "decode", args -> URLDecoder.decode((String) args[0], StandardCharsets.UTF_8)));
+        var utilities = service(Utilities.class, Map.of("urlUtils", args -> urlUtils));
+        var http = service(Http.class, Map.of("sendRequest", args -> send((HttpRequest) args[0])));
+        var extension = service(Extension.class, Map.of("registerUnloadingHandler", args -> registration));
+        var scanner = service(Scanner.class, Map.of("registerScanCheck", args -> registration));
+        var userInterface = service(UserInterface.class, Map.of("registerSuiteTab", args -> registration));
+
+        return service(MontoyaApi.class, Map.of(
+                "logging", args -> logging,
+                "persistence", args -> persistence,
+                "utilities", args -> utilities,
+                "http", args -> http,
+                "extension", args -> extension,
+                "scanner", args -> scanner,
+                "userInterface", args -> userInterface));
+    }
+
+    long failedRequests() {
+        return failedRequests.get();
+    }
+
+    long logLines() {
+        return logLines.get();
+    }
+
+    /**
+     * Sends the raw request to its service, Burp style: a failed request yields a {@code null} response.
+     */
+    HttpRequestResponse send(HttpRequest request) {
+        var service = request.httpService();
+        var raw = request.toByteArray().getBytes();
+        var body = java.util.Arrays.copyOfRange(raw, request.bodyOffset(), raw.length);
+
+        var builder = java.net.http.HttpRequest.newBuilder(URI.create((service.secure() ? "https://" : "http://") + service.host() + ":" + service.port() + request.path()))
+                .method(request.method(), body.length == 0 ? java.net.http.HttpRequest.BodyPublishers.noBody() : java.net.http.HttpRequest.BodyPublishers.ofByteArray(body))
+                .timeout(Duration.ofSeconds(60));
+        for (var header : request.headers()) {
+            if (!RESTRICTED_HEADERS.contains(header.name().toLowerCase()))
+                builder.header(header.name(), header.value());
+        }
+
+        try {
+            var response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            var headers = new ArrayList<HttpHeader>();
+            response.headers().map().forEach((name, values) -> values.forEach(value -> headers.add(FakeHttp.header(name, value))));
+            return FakeHttp.requestResponse(request, FakeHttp.response(response.statusCode(), headers, response.body()), List.of());
+        } catch (IOException | IllegalArgumentException ex) {
+            failedRequests.incrementAndGet();
+            log("Request to " + request.url() + " failed: " + ex.getMessage());
+            return FakeHttp.requestResponse(request, null, List.of());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failedRequests.incrementAndGet();
+            return FakeHttp.requestResponse(request, null, List.of());
+        }
+    }
+
+    private Object log(Object message) {
+        logLines.incrementAndGet();
+        if (verbose)
+            System.out.println(message);
+        return null;
+    }
+
+    /**
+     * A proxy answering the given methods; other void methods are ignored and anything else returns {@code null}.
+     */
+    private static <T> T service(Class<T> type, Map<String, Function<Object[], Object>> methods) {
+        return FakeHttp.proxy(type, (proxy, method, args) -> {
+            var implementation = methods.get(method.getName());
+            if (implementation != null)
+                return implementation.apply(args);
+
+            return switch (method.getName()) {
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> type.getSimpleName();
+                default -> null;
+            };
+        });
+    }
+}
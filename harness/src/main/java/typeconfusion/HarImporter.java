@@ -0,0 +1,65 @@
+package typeconfusion;
+
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Turns the requests of a HAR capture into base requests aimed at the stand-in server, keeping method, path,
+ * query, headers and body.
+ */
+final class HarImporter {
+
+    private static final Set<String> DROPPED_HEADERS = Set.of("host", "content-length", "connection", "accept-encoding", "transfer-encoding");
+
+    private HarImporter() {
+    }
+
+    static List<HttpRequest> load(Path har, HttpService target) throws IOException {
+        var entries = new ObjectMapper().readTree(har.toFile()).path("log").path("entries");
+
+        var requests = new ArrayList<HttpRequest>();
+        for (var entry : entries) {
+            var request = entry.path("request");
+            var url = URI.create(request.path("url").asText());
+            var requestTarget = url.getRawPath() == null || url.getRawPath().isEmpty() ? "/" : url.getRawPath();
+            if (url.getRawQuery() != null)
+                requestTarget += "?" + url.getRawQuery();
+
+            var body = request.path("postData").path("text").asText("");
+
+            var raw = new StringBuilder()
+                    .append(request.path("method").asText("GET")).append(' ').append(requestTarget).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(target.host()).append(':').append(target.port()).append("\r\n");
+
+            for (var header : request.path("headers")) {
+                var name = header.path("name").asText();
+                if (name.startsWith(":") || DROPPED_HEADERS.contains(name.toLowerCase()))
+                    continue;
+                raw.append(name).append(": ").append(header.path("value").asText()).append("\r\n");
+            }
+
+            var bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+            if (bodyBytes.length > 0)
+                raw.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+            raw.append("\r\n");
+
+            var head = raw.toString().getBytes(StandardCharsets.ISO_8859_1);
+            var bytes = new byte[head.length + bodyBytes.length];
+            System.arraycopy(head, 0, bytes, 0, head.length);
+            System.arraycopy(bodyBytes, 0, bytes, head.length, bodyBytes.length);
+
+            requests.add(FakeHttp.request(target, bytes));
+        }
+
+        return requests;
+    }
+}
@@ -0,0 +1,203 @@
+package typeconfusion;
+
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPoint;
+import burp.api.montoya.scanner.audit.issues.AuditIssue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link TypeConfusionCheck#activeAudit} headlessly against the {@link StandInServer}, over base requests
+ * imported from a HAR file or generated by {@link SyntheticWorkload}, and reports throughput, cost per finding
+ * and how the findings compare to the parameters the server was configured to make vulnerable.
+ *
+ * Scanner settings are read from system properties as in Burp, e.g. {@code -Dtypeconfusion.variance.samples=0}.
+ */
+public class ReplayHarness {
+
+    private record Audit(HttpRequestResponse base, AuditInsertionPoint insertionPoint, String parameterName) { }
+
+    public static void main(String[] args) throws Exception {
+        var options = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            if (args[i].equals("--verbose"))
+                options.put("verbose", "true");
+            else
+                options.put(args[i].substring(2), args[++i]);
+        }
+
+        var server = StandInServer.start(new StandInServer.Config(
+                integer(options, "port", 0),
+                integer(options, "latency-ms", 5),
+                integer(options, "jitter-ms", 5),
+                integer(options, "response-bytes", 2048),
+                Double.parseDouble(options.getOrDefault("vulnerable-ratio", "0.3")),
+                Double.parseDouble(options.getOrDefault("strict-ratio", "0.3")),
+                integer(options, "max-in-flight", 0)));
+
+        FakeHttp.installObjectFactory();
+        var verbose = options.containsKey("verbose");
+        var montoya = new FakeMontoya(verbose);
+        var api = montoya.api();
+        var target = FakeHttp.service("127.0.0.1", server.port(), false);
+
+        var requests = options.containsKey("har")
+                ? HarImporter.load(Path.of(options.get("har")), target)
+                : SyntheticWorkload.generate(target, integer(options, "requests", 500), integer(options, "parameters", 6), integer(options, "endpoints", 50),
+                        options.getOrDefault("mix", "1:1:1"));
+
+        var threads = integer(options, "threads", 10);
+        var executor = Executors.newFixedThreadPool(threads);
+        var config = new ScanConfig(api);
+        var scanState = config.incrementalStateFile() != null
+                ? ScanStateStore.load(config.incrementalStateFile(), config.simHashMaxDistance(), api.logging())
+                : null;
+        var check = new TypeConfusionCheck(api, scanState);
+
+        try {
+            var baseFutures = new ArrayList<Future<HttpRequestResponse>>();
+            for (var request : requests)
+                baseFutures.add(executor.submit(() -> montoya.send(request)));
+
+            var audits = new ArrayList<Audit>();
+            for (var future : baseFutures) {
+                var base = future.get();
+                if (base.response() == null)
+                    continue;
+
+                // base requests stand in for the proxy traffic Burp passively scans
+                check.passiveAudit(base);
+
+                for (var parameter : base.request().parameters()) {
+                    if (parameter.type() == HttpParameterType.URL || parameter.type() == HttpParameterType.BODY || parameter.type() == HttpParameterType.JSON)
+                        audits.add(new Audit(base, FakeHttp.insertionPoint(base.request(), parameter), parameter.name()));
+                }
+            }
+            server.startScan();
+
+            // repeated passes stand in for overlapping scans of the same traffic
+            var firstPass = List.copyOf(audits);
+            for (int pass = 1; pass < integer(options, "passes", 1); pass++)
+                audits.addAll(firstPass);
+
+            var start = System.nanoTime();
+            var auditFutures = new ArrayList<Future<List<AuditIssue>>>(audits.size());
+            for (var audit : audits)
+                auditFutures.add(executor.submit(() -> check.activeAudit(audit.base(), audit.insertionPoint()).auditIssues()));
+
+            long findings = 0, truePositives = 0, falsePositives = 0, missed = 0, errors = 0;
+            var issueList = new IssueList(check);
+            for (int i = 0; i < audits.size(); i++) {
+                int issues;
+                try {
+                    var reported = auditFutures.get(i).get();
+                    reported.forEach(issueList::add);
+                    issues = reported.size();
+                } catch (ExecutionException ex) {
+                    errors++;
+                    System.err.println("Audit failed: " + ex.getCause());
+                    continue;
+                }
+
+                var audit = audits.get(i);
+                var vulnerable = server.behaviour(audit.parameterName()) == StandInServer.Behaviour.VULNERABLE;
+                findings += issues;
+                if (issues > 0 && vulnerable) {
+                    truePositives++;
+                } else if (issues > 0) {
+                    falsePositives++;
+                    if (verbose)
+                        System.out.println("False positive: " + audit.insertionPoint() + " on " + audit.base().request().url());
+                } else if (vulnerable) {
+                    missed++;
+                    if (verbose)
+                        System.out.println("Missed: " + audit.insertionPoint() + " on " + audit.base().request().url());
+                }
+            }
+            var elapsed = (System.nanoTime() - start) / 1e9;
+
+            var sent = server.requests();
+            System.out.printf(Locale.ROOT, "Base requests:        %d%n", requests.size());
+            System.out.printf(Locale.ROOT, "Insertion points:     %d (%d failed)%n", audits.size(), errors);
+            System.out.printf(Locale.ROOT, "Scan time:            %.2f s with %d threads%n", elapsed, threads);
+            System.out.printf(Locale.ROOT, "Requests sent:        %d (%.1f requests/s, %.1f per insertion point)%n", sent, sent / elapsed, audits.isEmpty() ? 0.0 : (double) sent / audits.size());
+            System.out.printf(Locale.ROOT, "Throttled (429):      %d, failed %d%n", server.throttled(), montoya.failedRequests());
+            System.out.printf(Locale.ROOT, "Findings:             %d (%s requests per finding)%n", findings, findings == 0 ? "-" : String.format(Locale.ROOT, "%.1f", (double) sent / findings));
+            System.out.printf(Locale.ROOT, "Vulnerable insertion points found: %d, missed %d, false positives %d%n", truePositives, missed, falsePositives);
+            System.out.printf(Locale.ROOT, "Issues after consolidation: %d%n", issueList.size());
+            System.out.println(check.rateController().statistics());
+            System.out.println(check.gateVerdictCache().statistics());
+            if (check.responseCache() != null)
+                System.out.println(check.responseCache().statistics());
+            if (check.requestBudget() != null)
+                System.out.println(check.requestBudget().statistics());
+            if (scanState != null) {
+                scanState.save();
+                System.out.println(scanState.statistics());
+            }
+
+            var metricsFile = options.get("metrics");
+            if (metricsFile != null) {
+                var metrics = metricsFile.endsWith(".json") ? check.metrics().toJson() : check.metrics().toCsv();
+                Files.writeString(Path.of(metricsFile), metrics, StandardCharsets.UTF_8);
+            }
+        } finally {
+            executor.shutdownNow();
+            check.shutdown();
+            server.stop();
+        }
+    }
+
+    /**
+     * Burp's issue list: a new issue is consolidated against the existing issues of its URL path.
+     */
+    private static final class IssueList {
+        private final TypeConfusionCheck check;
+        private final Map<String, List<AuditIssue>> issuesByPath = new HashMap<>();
+        private int size;
+
+        IssueList(TypeConfusionCheck check) {
+            this.check = check;
+        }
+
+        void add(AuditIssue issue) {
+            var issues = issuesByPath.computeIfAbsent(issue.baseUrl().replaceFirst("\\?.*", ""), ignored -> new ArrayList<>());
+            for (var iterator = issues.listIterator(); iterator.hasNext(); ) {
+                switch (check.consolidateIssues(issue, iterator.next())) {
+                    case KEEP_EXISTING -> {
+                        return;
+                    }
+                    case KEEP_NEW -> {
+                        iterator.remove();
+                        size--;
+                    }
+                    case KEEP_BOTH -> { }
+                }
+            }
+            issues.add(issue);
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private static int integer(Map<String, String> options, String name, int defaultValue) {
+        var value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
@@ -0,0 +1,257 @@
+package typeconfusion;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A local target whose parameters behave in known ways, so scan results can be checked against ground truth.
+ *
+ * The server learns from the base requests until {@link #startScan()}: every parameter the first request of a
+ * path carried is required on that path, and the values seen are the ones it has records for. What a parameter
+ * does with a value depends on its {@link Behaviour}: vulnerable parameters coerce arrays to their first element
+ * and JSON values to text, strict parameters reject both with a 400, and inert parameters are ignored. Known
+ * values get a page of records, other valid values a short "no results" page, missing or malformed values a 400.
+ */
+final class StandInServer {
+
+    enum Behaviour { VULNERABLE, STRICT, INERT }
+
+    /**
+     * @param vulnerableRatio share of parameters without a behaviour prefix that are vulnerable
+     * @param strictRatio     share of those that are strict; the rest are inert
+     * @param maxInFlight     concurrent requests above which the server answers 429, {@code 0} for no limit
+     */
+    record Config(int port, int latencyMillis, int jitterMillis, int responseBytes, double vulnerableRatio, double strictRatio, int maxInFlight) { }
+
+    private static final Pattern VALID_VALUE = Pattern.compile("[A-Za-z0-9_.@:-]{0,64}");
+    private static final Pattern ARRAY_SUFFIX = Pattern.compile("\\[\\d*]$");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "stand-in-server");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, Map<String, JsonNodeType>> schemas = new ConcurrentHashMap<>();
+    private final Set<String> knownValues = ConcurrentHashMap.newKeySet();
+    private volatile boolean learning = true;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private StandInServer(Config config) throws IOException
+    {
+        this.config = config;
+        // without TCP_NODELAY the header and body writes of a response wait out delayed ACKs, adding ~40 ms per request
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", config.port()), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    static StandInServer start(Config config) throws IOException {
+        var standIn = new StandInServer(config);
+        standIn.server.start();
+        return standIn;
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    long throttled() {
+        return throttled.get();
+    }
+
+    /**
+     * Stops learning values from requests and resets the counters.
+     */
+    void startScan() {
+        learning = false;
+        requests.set(0);
+        throttled.set(0);
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    Behaviour behaviour(String parameterName) {
+        var name = ARRAY_SUFFIX.matcher(parameterName).replaceFirst("").toLowerCase();
+        if (name.startsWith("vuln"))
+            return Behaviour.VULNERABLE;
+        if (name.startsWith("strict"))
+            return Behaviour.STRICT;
+        if (name.startsWith("inert"))
+            return Behaviour.INERT;
+
+        var bucket = Math.floorMod(name.hashCode(), 1000) / 1000.0;
+        return bucket < config.vulnerableRatio() ? Behaviour.VULNERABLE
+                : bucket < config.vulnerableRatio() + config.strictRatio() ? Behaviour.STRICT
+                : Behaviour.INERT;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        var concurrent = inFlight.incrementAndGet();
+        try (exchange) {
+            if (config.maxInFlight() > 0 && concurrent > config.maxInFlight()) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                respond(exchange, 429, "Too many requests");
+                return;
+            }
+
+            pause();
+
+            var values = new LinkedHashMap<String, JsonNode>();
+            addPairs(values, exchange.getRequestURI().getRawQuery());
+
+            var body = exchange.getRequestBody().readAllBytes();
+            var contentType = String.valueOf(exchange.getRequestHeaders().getFirst("Content-Type")).toLowerCase();
+            if (contentType.contains("json") && body.length > 0) {
+                JsonNode json;
+                try {
+                    json = MAPPER.readTree(body);
+                } catch (IOException ex) {
+                    respond(exchange, 400, "Malformed JSON");
+                    return;
+                }
+                if (json != null && json.isObject())
+                    json.fields().forEachRemaining(field -> values.put(field.getKey(), field.getValue()));
+            } else if (contentType.contains("x-www-form-urlencoded")) {
+                addPairs(values, new String(body, StandardCharsets.ISO_8859_1));
+            }
+
+            var path = exchange.getRequestURI().getRawPath();
+            var schema = schemas.computeIfAbsent(path, key -> {
+                var types = new LinkedHashMap<String, JsonNodeType>();
+                values.forEach((name, value) -> types.put(name, value.getNodeType()));
+                return types;
+            });
+
+            var page = new StringBuilder("<html><head><title>").append(path).append("</title></head><body>");
+            var found = true;
+            for (var expected : schema.entrySet()) {
+                var name = expected.getKey();
+                var behaviour = behaviour(name);
+                if (behaviour == Behaviour.INERT)
+                    continue;
+
+                var value = values.get(name);
+                if (value == null) {
+                    respond(exchange, 400, "Missing parameter " + name);
+                    return;
+                }
+
+                var typeMismatch = value.isContainerNode() || value.getNodeType() != expected.getValue();
+                if (typeMismatch && behaviour == Behaviour.STRICT) {
+                    respond(exchange, 400, "Parameter " + name + " has the wrong type");
+                    return;
+                }
+
+                var text = value.isArray() ? (value.isEmpty() ? "" : value.get(0).asText()) : value.asText();
+                if (!VALID_VALUE.matcher(text).matches()) {
+                    respond(exchange, 400, "Parameter " + name + " is invalid");
+                    return;
+                }
+
+                var key = path + "\0" + name + "\0" + text;
+                if (learning)
+                    knownValues.add(key);
+                found &= knownValues.contains(key);
+
+                page.append("<p>").append(name).append(": ").append(text).append("</p>");
+            }
+
+            if (!found) {
+                respond(exchange, 200, page.append("<p>No results</p></body></html>").toString());
+                return;
+            }
+
+            for (int row = 0; page.length() < config.responseBytes(); row++)
+                page.append("<div class=\"row\">Row ").append(row).append(" of ").append(path).append("</div>");
+
+            respond(exchange, 200, page.append("</body></html>").toString());
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Collects {@code name=value} pairs; repeated names and {@code name[]}/{@code name[0]} become arrays.
+     */
+    private static void addPairs(Map<String, JsonNode> values, String pairs) {
+        if (pairs == null || pairs.isEmpty())
+            return;
+
+        for (var pair : pairs.split("&")) {
+            if (pair.isEmpty())
+                continue;
+
+            var equals = pair.indexOf('=');
+            var rawName = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            var value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+
+            var matcher = ARRAY_SUFFIX.matcher(rawName);
+            var isArray = matcher.find();
+            var name = isArray ? rawName.substring(0, matcher.start()) : rawName;
+
+            var existing = values.get(name);
+            if (existing == null && !isArray) {
+                values.put(name, MAPPER.getNodeFactory().textNode(value));
+            } else {
+                var array = existing != null && existing.isArray() ? (ArrayNode) existing : MAPPER.createArrayNode();
+                if (existing != null && !existing.isArray())
+                    array.add(existing);
+                array.add(value);
+                values.put(name, array);
+            }
+        }
+    }
+
+    private void pause() {
+        var millis = config.latencyMillis() + (config.jitterMillis() > 0 ? ThreadLocalRandom.current().nextInt(config.jitterMillis() + 1) : 0);
+        if (millis <= 0)
+            return;
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", status == 200 ? "text/html; charset=utf-8" : "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,119 @@
+package typeconfusion;
+
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated base requests cycling through query string, urlencoded and JSON parameters. Parameter names carry
+ * their stand-in behaviour ({@code vuln}, {@code strict}, {@code inert}) in proportion to the given mix, spread
+ * evenly over the request; JSON bodies mix strings, numbers and booleans.
+ */
+final class SyntheticWorkload {
+
+    private static final String[] BEHAVIOURS = { "vuln", "strict", "inert" };
+
+    private SyntheticWorkload() {
+    }
+
+    /**
+     * @param mix weights of the {@code vuln}, {@code strict} and {@code inert} behaviours, e.g. {@code 1:1:1}
+     */
+    static List<HttpRequest> generate(HttpService target, int count, int parametersPerRequest, int endpoints, String mix) {
+        var behaviours = behaviours(mix);
+        var requests = new ArrayList<HttpRequest>(count);
+        for (int i = 0; i < count; i++) {
+            var endpoint = i % Math.max(1, endpoints);
+            var raw = switch (i % 3) {
+                case 0 -> get(target, "/search/" + endpoint, pairs(behaviours, i, parametersPerRequest));
+                case 1 -> post(target, "/form/" + endpoint, "application/x-www-form-urlencoded", pairs(behaviours, i, parametersPerRequest));
+                default -> post(target, "/api/" + endpoint, "application/json", json(behaviours, i, parametersPerRequest));
+            };
+            requests.add(FakeHttp.request(target, raw.getBytes(StandardCharsets.ISO_8859_1)));
+        }
+        return requests;
+    }
+
+    /**
+     * One cycle of behaviours in proportion to the weights, interleaved by smooth weighted round robin so that a
+     * {@code 1:1:8} mix does not put all live parameters next to each other.
+     */
+    private static String[] behaviours(String mix) {
+        var parts = mix.split(":");
+        if (parts.length != BEHAVIOURS.length)
+            throw new IllegalArgumentException("Expected a mix of vuln:strict:inert weights, got " + mix);
+
+        var weights = new int[BEHAVIOURS.length];
+        var total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Integer.parseInt(parts[i]);
+            if (weights[i] < 0)
+                throw new IllegalArgumentException("Negative weight in mix " + mix);
+            total += weights[i];
+        }
+        if (total == 0)
+            throw new IllegalArgumentException("Empty mix " + mix);
+
+        var cycle = new String[total];
+        var current = new int[weights.length];
+        for (int slot = 0; slot < total; slot++) {
+            var chosen = 0;
+            for (int i = 0; i < weights.length; i++) {
+                current[i] += weights[i];
+                if (current[i] > current[chosen])
+                    chosen = i;
+            }
+            current[chosen] -= total;
+            cycle[slot] = BEHAVIOURS[chosen];
+        }
+        return cycle;
+    }
+
+    private static String name(String[] behaviours, int parameter) {
+        return behaviours[parameter % behaviours.length] + "_" + parameter;
+    }
+
+    private static String pairs(String[] behaviours, int request, int parameters) {
+        var pairs = new StringBuilder();
+        for (int p = 0; p < parameters; p++) {
+            if (p > 0)
+                pairs.append('&');
+            pairs.append(name(behaviours, p)).append("=value").append(request).append('_').append(p);
+        }
+        return pairs.toString();
+    }
+
+    private static String json(String[] behaviours, int request, int parameters) {
+        var json = new StringBuilder("{");
+        for (int p = 0; p < parameters; p++) {
+            if (p > 0)
+                json.append(", ");
+            json.append('"').append(name(behaviours, p)).append("\": ");
+            switch ((p / BEHAVIOURS.length) % 3) {
+                case 0 -> json.append("\"value").append(request).append('_').append(p).append('"');
+                case 1 -> json.append(request * 31 + p);
+                default -> json.append(request % 2 == 0);
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    private static String get(HttpService target, String path, String query) {
+        return "GET " + path + "?" + query + " HTTP/1.1\r\n"
+                + "Host: " + target.host() + ":" + target.port() + "\r\n"
+                + "Accept: */*\r\n"
+                + "\r\n";
+    }
+
+    private static String post(HttpService target, String path, String contentType, String body) {
+        return "POST " + path + " HTTP/1.1\r\n"
+                + "Host: " + target.host() + ":" + target.port() + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length() + "\r\n"
+                + "\r\n"
+                + body;
+    }
+}
@@ -0,0 +1,254 @@
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Paces the probes sent to each host with an AIMD concurrency limit. Every host starts with a small limit
+ * that grows by one after a full window of healthy responses and halves when a response is throttled
+ * (429/503) or the smoothed latency climbs well above the fastest latency seen for that host. A {@code Retry-After}
+ * header pauses the host until the advertised time.
+ *
+ * A scan-wide limit bounds the total number of in-flight probes. When it is exhausted, freed tokens go to the
+ * waiting hosts in turn, one probe each, so a host with many queued probes cannot take every token from the others.
+ */
+class AdaptiveRateController {
+
+    private static final int INITIAL_LIMIT = 2;
+    private static final double LATENCY_CONGESTION_FACTOR = 2.5;
+    private static final long LATENCY_CONGESTION_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final long DEFAULT_THROTTLE_PAUSE_MILLIS = 1_000;
+
+    private final int maxConcurrentPerHost;
+    private final long maxPauseMillis;
+    private final TotalLimit total;
+    private final ConcurrentHashMap<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+
+    AdaptiveRateController(int maxConcurrentPerHost, int maxConcurrentTotal, long maxPauseMillis)
+    {
+        this.maxConcurrentPerHost = Math.max(1, maxConcurrentPerHost);
+        this.maxPauseMillis = maxPauseMillis;
+        this.total = new TotalLimit(Math.max(1, maxConcurrentTotal));
+    }
+
+    /**
+     * Blocks until the host may receive another probe.
+     */
+    HostLimiter acquire(HttpService service) {
+        var host = hosts.computeIfAbsent(service.host().toLowerCase() + ":" + service.port(), key -> new HostLimiter(key));
+        host.acquire();
+        total.acquire(host);
+        return host;
+    }
+
+    /**
+     * Releases the tokens taken by {@link #acquire} and feeds the outcome of the probe back into the host's limit.
+     *
+     * @param response the probe response, {@code null} when the request failed
+     */
+    void release(HostLimiter host, long latencyNanos, HttpResponse response) {
+        total.release();
+        host.release(latencyNanos, response);
+    }
+
+    static boolean isThrottled(HttpResponse response) {
+        return response != null && (response.statusCode() == 429 || response.statusCode() == 503);
+    }
+
+    String statistics() {
+        var builder = new StringBuilder("Rate controller:");
+        hosts.values().forEach(host -> builder.append(' ').append(host));
+        return builder.toString();
+    }
+
+    /**
+     * Round-robin over hosts for the scan-wide tokens: every host with waiting probes gets one token per round.
+     */
+    private static final class TotalLimit {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<HostLimiter, ArrayDeque<Condition>> waiting = new LinkedHashMap<>();
+        private final Set<Condition> granted = new HashSet<>();
+        private int available;
+
+        TotalLimit(int tokens) {
+            this.available = tokens;
+        }
+
+        void acquire(HostLimiter host) {
+            lock.lock();
+            try {
+                if (available > 0 && waiting.isEmpty()) {
+                    available--;
+                    return;
+                }
+
+                var turn = lock.newCondition();
+                waiting.computeIfAbsent(host, key -> new ArrayDeque<>()).add(turn);
+                while (!granted.remove(turn))
+                    turn.awaitUninterruptibly();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                var next = waiting.entrySet().iterator();
+                if (!next.hasNext()) {
+                    available++;
+                    return;
+                }
+
+                var entry = next.next();
+                next.remove();
+                var turn = entry.getValue().poll();
+                // a host with more waiting probes queues up behind the other hosts again
+                if (!entry.getValue().isEmpty())
+                    waiting.put(entry.getKey(), entry.getValue());
+
+                granted.add(turn);
+                turn.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    final class HostLimiter {
+        private final String name;
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final Condition available = lock.newCondition();
+
+        private double limit = Math.min(INITIAL_LIMIT, maxConcurrentPerHost);
+        private int inFlight;
+        private int healthyInWindow;
+        private long minLatencyNanos = Long.MAX_VALUE;
+        private double smoothedLatencyNanos;
+        private long pausedUntil;
+        private long lastDecrease;
+        private long throttled;
+
+        private HostLimiter(String name) {
+            this.name = name;
+        }
+
+        private void acquire() {
+            lock.lock();
+            try {
+                while (true) {
+                    var pause = pausedUntil - System.currentTimeMillis();
+                    if (pause > 0) {
+                        available.await(pause, TimeUnit.MILLISECONDS);
+                    } else if (inFlight >= (int) limit) {
+                        available.await();
+                    } else {
+                        inFlight++;
+                        return;
+                    }
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + name, ex);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(long latencyNanos, HttpResponse response) {
+            lock.lock();
+            try {
+                inFlight--;
+
+                if (isThrottled(response)) {
+                    throttled++;
+                    decrease();
+                    var pause = Math.min(maxPauseMillis, retryAfterMillis(response));
+                    pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + pause);
+                } else if (response != null) {
+                    minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+                    smoothedLatencyNanos = smoothedLatencyNanos == 0
+                            ? latencyNanos
+                            : smoothedLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+                    if (congested()) {
+                        decrease();
+                    } else if (++healthyInWindow >= (int) limit && limit < maxConcurrentPerHost) {
+                        limit = Math.min(maxConcurrentPerHost, limit + 1);
+                        healthyInWindow = 0;
+                    }
+                }
+
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Whether the smoothed latency is well above the fastest seen, by both a factor and an absolute margin so
+         * the jitter of fast hosts does not count as queueing.
+         */
+        private boolean congested() {
+            return smoothedLatencyNanos > minLatencyNanos * LATENCY_CONGESTION_FACTOR
+                    && smoothedLatencyNanos - minLatencyNanos > LATENCY_CONGESTION_SLACK_NANOS;
+        }
+
+        /**
+         * Halves the limit, at most once per observed round-trip so one burst of slow responses counts once.
+         */
+        private void decrease() {
+            var now = System.nanoTime();
+            var roundTrip = minLatencyNanos == Long.MAX_VALUE ? 0 : minLatencyNanos;
+            if (now - lastDecrease < roundTrip)
+                return;
+
+            limit = Math.max(1, limit / 2);
+            healthyInWindow = 0;
+            lastDecrease = now;
+        }
+
+        @Override
+        public String toString() {
+            lock.lock();
+            try {
+                return name + "[limit=" + (int) limit + ", inFlight=" + inFlight + ", throttled=" + throttled + "]";
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Parses {@code Retry-After} as delay seconds or an HTTP date, falling back to a short default pause.
+     */
+    static long retryAfterMillis(HttpResponse response) {
+        var value = response.headerValue("Retry-After");
+        if (value == null || value.isBlank())
+            return DEFAULT_THROTTLE_PAUSE_MILLIS;
+
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+
+        try {
+            var date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+        } catch (DateTimeParseException ignored) {
+            return DEFAULT_THROTTLE_PAUSE_MILLIS;
+        }
+    }
+}
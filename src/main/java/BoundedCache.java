@@ -0,0 +1,146 @@
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Small thread-safe LRU cache with an optional time-to-live, shared by the scan-wide caches of the check.
+ * A cache built with a weigher also bounds the total weight of its entries, such as the bytes they hold.
+ */
+class BoundedCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long weight;
+    private long nextPurgeAt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private record Entry<V>(V value, long expiresAt, long weight) { }
+
+    /**
+     * @param maxEntries least recently used entries are evicted beyond this size
+     * @param ttlMillis  entries older than this are treated as absent, {@code 0} disables expiry
+     */
+    BoundedCache(int maxEntries, long ttlMillis)
+    {
+        this(maxEntries, ttlMillis, 0, value -> 0);
+    }
+
+    /**
+     * @param maxWeight least recently used entries are also evicted while the weights of all entries exceed this
+     * @param weigher   weight of a value, taken when it is stored
+     */
+    BoundedCache(int maxEntries, long ttlMillis, long maxWeight, ToLongFunction<V> weigher)
+    {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    synchronized V get(K key) {
+        var entry = entries.get(key);
+        if (entry != null && ttlMillis > 0 && entry.expiresAt() < System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.value();
+    }
+
+    /**
+     * Whether an unexpired entry is cached for the key, without counting a hit or miss or refreshing its recency.
+     */
+    synchronized boolean contains(K key) {
+        var entry = entries.get(key);
+        return entry != null && (ttlMillis <= 0 || entry.expiresAt() >= System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the cached value, or atomically stores and returns the one produced by {@code factory}.
+     * The factory runs under the cache lock, so it should only create a placeholder such as a future.
+     */
+    synchronized V computeIfAbsent(K key, Function<K, V> factory) {
+        var value = get(key);
+        if (value == null) {
+            value = factory.apply(key);
+            put(key, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Stores the value, then evicts least recently used entries beyond the size and weight bounds. Expired entries
+     * are purged at most once per tenth of the time-to-live, so they do not linger until they are evicted.
+     */
+    synchronized void put(K key, V value) {
+        var now = System.currentTimeMillis();
+        var entry = new Entry<>(value, ttlMillis > 0 ? now + ttlMillis : Long.MAX_VALUE, weigher.applyAsLong(value));
+        var previous = entries.put(key, entry);
+        weight += entry.weight() - (previous != null ? previous.weight() : 0);
+
+        if (ttlMillis > 0 && now >= nextPurgeAt) {
+            nextPurgeAt = now + ttlMillis / 10;
+            for (var iterator = entries.values().iterator(); iterator.hasNext(); ) {
+                var candidate = iterator.next();
+                if (candidate.expiresAt() < now) {
+                    weight -= candidate.weight();
+                    iterator.remove();
+                }
+            }
+        }
+
+        var eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && (entries.size() > maxEntries || (maxWeight > 0 && weight > maxWeight))) {
+            weight -= eldest.next().getValue().weight();
+            eldest.remove();
+        }
+    }
+
+    synchronized void remove(K key) {
+        var entry = entries.remove(key);
+        if (entry != null)
+            weight -= entry.weight();
+    }
+
+    /**
+     * Removes the entry only while it still maps to {@code value}, so a stale holder cannot drop its replacement.
+     */
+    synchronized void remove(K key, V value) {
+        var entry = entries.get(key);
+        if (entry != null && entry.value() == value)
+            remove(key);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total weight of the entries, {@code 0} without a weigher
+     */
+    synchronized long weight() {
+        return weight;
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,48 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Content digests keying the caches of per base request work. Burp does not promise to pass the same
+ * {@link HttpRequestResponse} instance to every insertion point of a base request, so those caches cannot be
+ * keyed by the instance; the digest of an instance is remembered while it is reachable, so a base request shared
+ * by its insertion points is hashed once.
+ */
+class ContentKeys {
+
+    private final Map<Object, String> digests = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Digest of the service, request and response of a base request.
+     */
+    String of(HttpRequestResponse requestResponse) {
+        var digest = digests.get(requestResponse);
+        if (digest == null) {
+            var response = requestResponse.response();
+            digest = Digests.sha256(
+                    requestResponse.httpService().toString().getBytes(StandardCharsets.UTF_8),
+                    requestResponse.request().toByteArray().getBytes(),
+                    response != null ? response.toByteArray().getBytes() : new byte[0]);
+            digests.put(requestResponse, digest);
+        }
+
+        return digest;
+    }
+
+    /**
+     * Digest of a response.
+     */
+    String of(HttpResponse response) {
+        var digest = digests.get(response);
+        if (digest == null) {
+            digest = Digests.sha256(response.toByteArray().getBytes());
+            digests.put(response, digest);
+        }
+
+        return digest;
+    }
+}
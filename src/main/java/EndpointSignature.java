@@ -0,0 +1,22 @@
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+/**
+ * Identifies an endpoint independently of its method, query string and body, so duplicate crawl
+ * entries and alternative HTTP methods of the same resource share scan-wide state.
+ */
+record EndpointSignature(String host, int port, boolean secure, String path) {
+
+    static EndpointSignature of(HttpRequest request) {
+        return of(request.httpService(), request.pathWithoutQuery());
+    }
+
+    static EndpointSignature of(HttpService service, String path) {
+        return new EndpointSignature(service.host().toLowerCase(), service.port(), service.secure(), path);
+    }
+
+    @Override
+    public String toString() {
+        return (secure ? "https://" : "http://") + host + ":" + port + path;
+    }
+}
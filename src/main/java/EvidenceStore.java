@@ -0,0 +1,38 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+
+/**
+ * Keeps the evidence of findings off the heap. Burp holds reported issues for the lifetime of the project and
+ * the group test caches its findings, so evidence with large bodies is copied to Burp's temporary files, which
+ * leaves a small file-backed handle in memory and reads the message back when the issue is opened.
+ */
+class EvidenceStore {
+
+    private final int tempFileBytes;
+    private final ScanMetrics metrics;
+
+    /**
+     * @param tempFileBytes evidence whose request and response bodies exceed this size together is moved to a temporary file
+     */
+    EvidenceStore(int tempFileBytes, ScanMetrics metrics)
+    {
+        this.tempFileBytes = tempFileBytes;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the evidence to retain for a finding, backed by a temporary file when it is large.
+     * Markers are not carried over, so they should be added to the returned evidence.
+     */
+    HttpRequestResponse retain(HttpRequestResponse evidence) {
+        var size = (long) evidence.request().body().length();
+        if (evidence.response() != null)
+            size += evidence.response().body().length();
+
+        if (size <= tempFileBytes)
+            return evidence;
+
+        metrics.increment("evidence.tempFiles");
+        metrics.add("evidence.tempFileBytes", size);
+        return evidence.copyToTempFile();
+    }
+}
@@ -0,0 +1,87 @@
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the outcome of the two false positive gates (fuzzy payload and parameter removal) for every
+ * endpoint parameter seen during the scan, so duplicate insertion points do not resend the gate probes.
+ */
+class GateVerdictCache {
+
+    enum Verdict {
+        /** the fuzzy payload did not change the response, one request was spent */
+        INERT_FUZZY(1),
+        /** removing the parameter did not change the response, two requests were spent */
+        INERT_REMOVAL(2),
+        /** both gates passed, the parameter is processed by the application */
+        LIVE(2);
+
+        private final int requestCost;
+
+        Verdict(int requestCost) {
+            this.requestCost = requestCost;
+        }
+
+        int requestCost() {
+            return requestCost;
+        }
+    }
+
+    /**
+     * @param parameterName the parameter name, for JSON parameters the path of the property so that properties
+     *                      sharing a name in different objects keep their own verdicts
+     */
+    record Key(EndpointSignature endpoint, AuditInsertionPointType insertionPointType, String parameterName) { }
+
+    private static final int DEFAULT_MAX_ENTRIES = 20_000;
+    private static final long DEFAULT_TTL_MILLIS = 30 * 60 * 1000L;
+
+    private final BoundedCache<Key, Verdict> verdicts;
+    private final AtomicLong requestsSaved = new AtomicLong();
+
+    GateVerdictCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    GateVerdictCache(int maxEntries, long ttlMillis)
+    {
+        this.verdicts = new BoundedCache<>(maxEntries, ttlMillis);
+    }
+
+    Verdict verdict(Key key) {
+        var verdict = verdicts.get(key);
+        if (verdict != null)
+            requestsSaved.addAndGet(verdict.requestCost());
+
+        return verdict;
+    }
+
+    /**
+     * Whether a verdict is cached for the key, without counting a hit or miss.
+     */
+    boolean known(Key key) {
+        return verdicts.contains(key);
+    }
+
+    void record(Key key, Verdict verdict) {
+        verdicts.put(key, verdict);
+    }
+
+    long hits() {
+        return verdicts.hits();
+    }
+
+    long misses() {
+        return verdicts.misses();
+    }
+
+    long requestsSaved() {
+        return requestsSaved.get();
+    }
+
+    String statistics() {
+        return "Gate verdict cache: " + hits() + " hits, " + misses() + " misses, "
+                + requestsSaved() + " requests saved, " + verdicts.size() + " entries";
+    }
+}
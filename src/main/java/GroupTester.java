@@ -0,0 +1,382 @@
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.core.Marker;
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.params.ParsedHttpParameter;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Request-level group testing: instead of probing every insertion point on its own, the gates and the
+ * array/type mutation are applied to a whole group of parameters in one request. A group whose response
+ * changes is bisected until the parameters responsible for the change are isolated, so a wide form costs
+ * roughly O(k log n) requests where k is the number of parameters that change the response.
+ *
+ * The phases mirror the per insertion point test: parameters the fuzzy payload does not affect are inert,
+ * of the rest those whose removal does not matter are inert, and of the live parameters those that
+ * tolerate the mutation without a change in the response are reported. Inert and reported parameters are
+ * covered by the group test; the other live parameters still run the payload plan on their own, reusing the
+ * gate verdicts recorded here. Group testing therefore saves requests when most parameters are inert, and
+ * costs more than the per insertion point test when most are live.
+ *
+ * Burp does not say up front which insertion points it will offer for a base request, so a group is formed from
+ * the insertion points that reach the check: the first one of a base request waits up to the linger time for the
+ * others, or until every parameter of the request has arrived, and the group holds only those. Insertion points
+ * Burp does not offer, or the scan does not admit, are therefore never mutated, and those arriving after the
+ * group closed are tested on their own. Parameters whose gate verdict is already cached are left out as well,
+ * since testing them on their own costs no gate requests.
+ */
+class GroupTester {
+
+    /**
+     * @param name the parameter name, for JSON parameters the path of the property
+     */
+    record ParameterKey(AuditInsertionPointType type, String name) { }
+
+    record Finding(String issueName, String family, String description, String payload, HttpRequestResponse evidence, int groupSize) { }
+
+    static final class Result {
+        private static final Result NONE = new Result();
+
+        private final Set<ParameterKey> covered = new HashSet<>();
+        private final Map<ParameterKey, Finding> findings = new HashMap<>();
+
+        boolean covers(AuditInsertionPointType type, String name) {
+            return covered.contains(new ParameterKey(type, name));
+        }
+
+        Optional<Finding> finding(AuditInsertionPointType type, String name) {
+            return Optional.ofNullable(findings.get(new ParameterKey(type, name)));
+        }
+    }
+
+    private record Spliced(HttpRequest request, Map<ParsedHttpParameter, Marker> markers) { }
+
+    /**
+     * The insertion points of one base request that arrived before its group closed, and the group's result.
+     */
+    private static final class Batch {
+        private final Set<ParameterKey> members = new HashSet<>();
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private boolean closed;
+
+        synchronized boolean join(ParameterKey key) {
+            if (closed)
+                return false;
+
+            members.add(key);
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Waits until {@code expected} insertion points have joined or the linger time has passed, then closes.
+         */
+        synchronized Set<ParameterKey> close(int expected, long lingerMillis) throws InterruptedException {
+            var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+            for (var remaining = deadline - System.nanoTime(); members.size() < expected && remaining > 0; remaining = deadline - System.nanoTime())
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+
+            closed = true;
+            return Set.copyOf(members);
+        }
+    }
+
+    private interface EditFactory {
+        RequestSplicer.Edit edit(RequestSplicer splicer, ParsedHttpParameter parameter);
+    }
+
+    private final MontoyaApi api;
+    private final ContentKeys contentKeys;
+    private final ProbeDispatcher probeDispatcher;
+    private final GateVerdictCache gateVerdictCache;
+    private final EvidenceStore evidenceStore;
+    private final BiPredicate<HttpRequestResponse, HttpRequestResponse> changeOracle;
+    private final String fuzzyPayload;
+    private final int minParameters;
+    private final int maxGroupSize;
+    private final long lingerMillis;
+
+    private final BoundedCache<String, Batch> batches = new BoundedCache<>(256, 10 * 60 * 1000L);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    GroupTester(MontoyaApi api, ContentKeys contentKeys, ProbeDispatcher probeDispatcher, GateVerdictCache gateVerdictCache,
+                EvidenceStore evidenceStore, BiPredicate<HttpRequestResponse, HttpRequestResponse> changeOracle, String fuzzyPayload,
+                int minParameters, int maxGroupSize, long lingerMillis)
+    {
+        this.api = api;
+        this.contentKeys = contentKeys;
+        this.probeDispatcher = probeDispatcher;
+        this.gateVerdictCache = gateVerdictCache;
+        this.evidenceStore = evidenceStore;
+        this.changeOracle = changeOracle;
+        this.fuzzyPayload = fuzzyPayload;
+        this.minParameters = minParameters;
+        this.maxGroupSize = Math.max(2, maxGroupSize);
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Adds an admitted insertion point to the group of its base request and returns the group's result, once per
+     * base request: the first insertion point collects the group and runs it, the others joining in time wait for
+     * and share its result. The result covers nothing for an insertion point that arrived after the group closed,
+     * or when the group has fewer than the minimum number of parameters.
+     *
+     * @param name          the parameter name, for JSON parameters the path of the property
+     * @param jsonBodyIndex the index of the base request's JSON body, used to key JSON parameters on their path
+     */
+    Result test(HttpRequestResponse baseRequestResponse, AuditInsertionPointType type, String name, Supplier<JsonBodyIndex> jsonBodyIndex) {
+        var key = contentKeys.of(baseRequestResponse);
+        var fresh = new Batch();
+        var batch = batches.computeIfAbsent(key, ignored -> fresh);
+
+        if (!batch.join(new ParameterKey(type, name)))
+            return batch.result.isDone() && !batch.result.isCompletedExceptionally() ? batch.result.join() : Result.NONE;
+
+        if (batch == fresh) {
+            try {
+                var parameters = groupParameters(baseRequestResponse, batch, jsonBodyIndex);
+                batch.result.complete(parameters.size() >= minParameters ? run(baseRequestResponse, parameters) : Result.NONE);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                batches.remove(key, batch);
+                batch.result.completeExceptionally(new CancellationException("Group test interrupted"));
+            } catch (RuntimeException ex) {
+                batches.remove(key, batch);
+                batch.result.completeExceptionally(ex);
+            }
+        }
+
+        return batch.result.join();
+    }
+
+    private Result run(HttpRequestResponse baseRequestResponse, Map<ParsedHttpParameter, ParameterKey> keyedParameters) {
+        var result = new Result();
+        var parameters = List.copyOf(keyedParameters.keySet());
+        var baseRequest = baseRequestResponse.request();
+        var endpoint = endpoint(baseRequestResponse);
+        var splicer = new RequestSplicer(baseRequestResponse.httpService(), baseRequest);
+
+        // false positive check #1: parameters the fuzzy payload does not affect are not processed
+        var processed = bisect(baseRequestResponse, parameters, group -> splice(splicer, group, this::fuzz).request(), null);
+
+        // false positive check #2: parameters whose removal does not change the response are not processed
+        var live = bisect(baseRequestResponse, processed, group -> baseRequest.withRemovedParameters(group).withService(baseRequestResponse.httpService()), null);
+
+        var tolerated = new HashMap<ParsedHttpParameter, Spliced>();
+        var evidence = new HashMap<ParsedHttpParameter, HttpRequestResponse>();
+        var rejected = bisect(baseRequestResponse, live, group -> {
+            var spliced = splice(splicer, group, this::mutate);
+            for (var parameter : group)
+                tolerated.put(parameter, spliced);
+            return spliced.request();
+        }, evidence);
+
+        // parameters mutated together share one evidence message, which is retained once
+        var retained = new IdentityHashMap<HttpRequestResponse, HttpRequestResponse>();
+        for (var parameter : parameters) {
+            var key = keyedParameters.get(parameter);
+
+            GateVerdictCache.Verdict verdict = !processed.contains(parameter)
+                    ? GateVerdictCache.Verdict.INERT_FUZZY
+                    : !live.contains(parameter)
+                    ? GateVerdictCache.Verdict.INERT_REMOVAL
+                    : GateVerdictCache.Verdict.LIVE;
+            gateVerdictCache.record(new GateVerdictCache.Key(endpoint, key.type(), key.name()), verdict);
+
+            if (verdict != GateVerdictCache.Verdict.LIVE) {
+                result.covered.add(key);
+                continue;
+            }
+
+            // live parameters whose mutation changed the response are left to the per insertion point test
+            if (rejected.contains(parameter) || !evidence.containsKey(parameter))
+                continue;
+
+            var spliced = tolerated.get(parameter);
+            var retainedEvidence = retained.computeIfAbsent(evidence.get(parameter), evidenceStore::retain);
+            result.covered.add(key);
+            result.findings.put(key, finding(splicer, parameter, retainedEvidence, spliced.markers().get(parameter), spliced.markers().size()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the parameters whose mutation changes the response, sending each level of the bisection in parallel.
+     * When {@code unchangedEvidence} is given, every parameter of a group whose response did not change is mapped
+     * to the response of the smallest such group.
+     */
+    private List<ParsedHttpParameter> bisect(HttpRequestResponse baseRequestResponse, List<ParsedHttpParameter> parameters,
+                                             Function<List<ParsedHttpParameter>, HttpRequest> buildRequest,
+                                             Map<ParsedHttpParameter, HttpRequestResponse> unchangedEvidence) {
+        var changing = new ArrayList<ParsedHttpParameter>();
+        var level = new ArrayList<List<ParsedHttpParameter>>();
+        for (int i = 0; i < parameters.size(); i += maxGroupSize)
+            level.add(parameters.subList(i, Math.min(parameters.size(), i + maxGroupSize)));
+
+        while (!level.isEmpty()) {
+            var requests = level.stream().map(buildRequest).toList();
+            var responses = probeDispatcher.sendAll(ScanMetrics.Phase.GROUP_TEST, requests);
+
+            var nextLevel = new ArrayList<List<ParsedHttpParameter>>();
+            for (int i = 0; i < level.size(); i++) {
+                var group = level.get(i);
+                var response = responses.get(i);
+
+                if (!changeOracle.test(baseRequestResponse, response)) {
+                    if (unchangedEvidence != null)
+                        group.forEach(parameter -> unchangedEvidence.put(parameter, response));
+                    continue;
+                }
+
+                if (group.size() == 1) {
+                    changing.add(group.get(0));
+                } else {
+                    nextLevel.add(group.subList(0, group.size() / 2));
+                    nextLevel.add(group.subList(group.size() / 2, group.size()));
+                }
+            }
+            level = nextLevel;
+        }
+
+        return changing;
+    }
+
+    private Finding finding(RequestSplicer splicer, ParsedHttpParameter parameter, HttpRequestResponse evidence, Marker marker, int groupSize) {
+        var mutated = new String(mutate(splicer, parameter).replacement(), StandardCharsets.ISO_8859_1);
+
+        return switch (parameter.type()) {
+            case URL -> new Finding("Array confusion found in urlencoded query parameter", "array", "an array", mutated, evidence.withRequestMarkers(marker), groupSize);
+            case BODY -> new Finding("Array confusion found in urlencoded body parameter", "array", "an array", mutated, evidence.withRequestMarkers(marker), groupSize);
+            default -> isJsonString(splicer, parameter)
+                    ? new Finding("Array confusion found in JSON body", "array", "an array", mutated, evidence.withRequestMarkers(marker), groupSize)
+                    : new Finding("Type confusion found in JSON body", "type", "a string", mutated, evidence.withRequestMarkers(marker), groupSize);
+        };
+    }
+
+    /**
+     * Collects the insertion points joining the batch and returns their parameters whose gate verdict is not cached,
+     * in request order.
+     */
+    private Map<ParsedHttpParameter, ParameterKey> groupParameters(HttpRequestResponse baseRequestResponse, Batch batch,
+                                                                   Supplier<JsonBodyIndex> jsonBodyIndex) throws InterruptedException {
+        var request = baseRequestResponse.request();
+        var eligible = new LinkedHashMap<ParameterKey, ParsedHttpParameter>();
+
+        for (var parameter : request.parameters()) {
+            var type = parameter.type();
+            String name;
+            if (type == HttpParameterType.URL || (type == HttpParameterType.BODY && request.contentType() == ContentType.URL_ENCODED))
+                name = parameter.name();
+            else if (type == HttpParameterType.JSON && request.contentType() == ContentType.JSON)
+                name = jsonBodyIndex.get().at(parameter.valueOffsets().startIndexInclusive() - request.bodyOffset())
+                        .map(JsonBodyIndex.Property::path)
+                        .orElse(null);
+            else
+                continue;
+
+            if (name != null)
+                eligible.putIfAbsent(new ParameterKey(insertionPointType(type), name), parameter);
+        }
+
+        var members = batch.close(eligible.size(), lingerMillis);
+        var endpoint = endpoint(baseRequestResponse);
+        var group = new LinkedHashMap<ParsedHttpParameter, ParameterKey>();
+        eligible.forEach((key, parameter) -> {
+            if (members.contains(key) && !gateVerdictCache.known(new GateVerdictCache.Key(endpoint, key.type(), key.name())))
+                group.put(parameter, key);
+        });
+
+        return group;
+    }
+
+    private Spliced splice(RequestSplicer splicer, List<ParsedHttpParameter> group, EditFactory editFactory) {
+        var edits = new ArrayList<RequestSplicer.Edit>(group.size());
+        for (var parameter : group)
+            edits.add(editFactory.edit(splicer, parameter));
+
+        var spliced = splicer.splice(edits);
+
+        var markers = new HashMap<ParsedHttpParameter, Marker>();
+        for (int i = 0; i < group.size(); i++)
+            markers.put(group.get(i), spliced.markers().get(i));
+
+        return new Spliced(spliced.request(), markers);
+    }
+
+    private RequestSplicer.Edit fuzz(RequestSplicer splicer, ParsedHttpParameter parameter) {
+        var value = parameter.valueOffsets();
+
+        if (parameter.type() != HttpParameterType.JSON)
+            return RequestSplicer.Edit.of(value.startIndexInclusive(), value.endIndexExclusive(), api.utilities().urlUtils().encode(fuzzyPayload));
+
+        if (isJsonString(splicer, parameter))
+            return RequestSplicer.Edit.of(value.startIndexInclusive() - 1, value.endIndexExclusive() + 1, serialize(fuzzyPayload));
+
+        var rawValue = splicer.sliceToString(value.startIndexInclusive(), value.endIndexExclusive());
+        return RequestSplicer.Edit.of(value.startIndexInclusive(), value.endIndexExclusive(), isJsonNumber(rawValue) ? "65534" : serialize(fuzzyPayload));
+    }
+
+    private RequestSplicer.Edit mutate(RequestSplicer splicer, ParsedHttpParameter parameter) {
+        var name = parameter.nameOffsets();
+        var value = parameter.valueOffsets();
+        var rawValue = splicer.sliceToString(value.startIndexInclusive(), value.endIndexExclusive());
+
+        if (parameter.type() != HttpParameterType.JSON) {
+            var rawName = splicer.sliceToString(name.startIndexInclusive(), name.endIndexExclusive());
+            var suffix = parameter.type() == HttpParameterType.URL ? "1" : "2";
+            return RequestSplicer.Edit.of(name.startIndexInclusive(), value.endIndexExclusive(),
+                    rawName + "[]=" + rawValue + "&" + rawName + "[]=" + rawValue + suffix);
+        }
+
+        if (isJsonString(splicer, parameter))
+            return RequestSplicer.Edit.of(value.startIndexInclusive() - 1, value.endIndexExclusive() + 1, "[\"" + rawValue + "\"]");
+
+        return RequestSplicer.Edit.of(value.startIndexInclusive(), value.endIndexExclusive(), serialize(rawValue));
+    }
+
+    private static boolean isJsonString(RequestSplicer splicer, ParsedHttpParameter parameter) {
+        var value = parameter.valueOffsets();
+        return value.startIndexInclusive() > 0
+                && value.endIndexExclusive() < splicer.length()
+                && splicer.byteAt(value.startIndexInclusive() - 1) == '"'
+                && splicer.byteAt(value.endIndexExclusive()) == '"';
+    }
+
+    private static boolean isJsonNumber(String value) {
+        return !value.isEmpty() && (Character.isDigit(value.charAt(0)) || value.charAt(0) == '-');
+    }
+
+    private String serialize(String value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static AuditInsertionPointType insertionPointType(HttpParameterType type) {
+        return switch (type) {
+            case URL -> AuditInsertionPointType.PARAM_URL;
+            case BODY -> AuditInsertionPointType.PARAM_BODY;
+            default -> AuditInsertionPointType.PARAM_JSON;
+        };
+    }
+
+    private static EndpointSignature endpoint(HttpRequestResponse baseRequestResponse) {
+        return EndpointSignature.of(baseRequestResponse.httpService(), baseRequestResponse.request().pathWithoutQuery());
+    }
+}
@@ -0,0 +1,124 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.scanner.ConsolidationAction;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+import burp.api.montoya.scanner.audit.issues.AuditIssue;
+import burp.api.montoya.scanner.audit.issues.AuditIssueConfidence;
+import burp.api.montoya.scanner.audit.issues.AuditIssueSeverity;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static burp.api.montoya.scanner.audit.issues.AuditIssue.auditIssue;
+
+/**
+ * Structured identity of the issues the check reports. Every issue is indexed by its detail under the
+ * endpoint, parameter and technique it proves, so Burp's pairwise consolidation is a lookup instead of a
+ * comparison of the HTML details, and a parameter confirmed again with another base value is not reported twice.
+ *
+ * With per-endpoint aggregation all findings of an endpoint are reported as one issue that lists every
+ * parameter; each new finding reissues it with one more evidence entry and the newer issue replaces the older.
+ */
+class IssueIndex {
+
+    /**
+     * What an issue proves. Aggregated issues only carry the endpoint.
+     */
+    record Key(EndpointSignature endpoint, AuditInsertionPointType location, String parameter, String technique) {
+
+        static Key endpoint(EndpointSignature endpoint) {
+            return new Key(endpoint, null, null, null);
+        }
+    }
+
+    private record Entry(Key key, int revision) { }
+
+    private record Finding(String detail, HttpRequestResponse evidence) { }
+
+    private static final class Aggregate {
+        private final LinkedHashMap<Key, Finding> findings = new LinkedHashMap<>();
+        private int revision;
+        private AuditIssue issue;
+    }
+
+    private static final String AGGREGATE_ISSUE_NAME = "Type confusion found";
+
+    private static final int MAX_ISSUES = 50_000;
+    private static final int MAX_AGGREGATED_ENDPOINTS = 10_000;
+    private static final int MAX_AGGREGATED_EVIDENCE = 20;
+
+    private final BoundedCache<String, Entry> issues = new BoundedCache<>(MAX_ISSUES, 0);
+    private final BoundedCache<EndpointSignature, Aggregate> aggregates;
+
+    /**
+     * @param aggregatePerEndpoint report all findings of an endpoint as one issue instead of one issue per finding
+     */
+    IssueIndex(boolean aggregatePerEndpoint)
+    {
+        this.aggregates = aggregatePerEndpoint ? new BoundedCache<>(MAX_AGGREGATED_ENDPOINTS, 0) : null;
+    }
+
+    /**
+     * Returns the issue to report for a finding. A finding an aggregated issue already covers returns that
+     * issue unchanged, which consolidation then drops in favour of the reported one.
+     */
+    AuditIssue report(Key key, String issueName, String detail, String url, HttpRequestResponse evidence) {
+        if (aggregates == null) {
+            issues.put(detail, new Entry(key, 0));
+            return issue(issueName, detail, url, List.of(evidence));
+        }
+
+        var aggregate = aggregates.computeIfAbsent(key.endpoint(), ignored -> new Aggregate());
+        synchronized (aggregate) {
+            if (aggregate.findings.putIfAbsent(key, new Finding(detail, evidence)) != null)
+                return aggregate.issue;
+
+            var aggregatedDetail = new StringBuilder("The check confirmed ").append(aggregate.findings.size())
+                    .append(aggregate.findings.size() == 1 ? " finding" : " findings").append(" on this endpoint:<ul>");
+            var aggregatedEvidence = new ArrayList<HttpRequestResponse>();
+            for (var finding : aggregate.findings.values()) {
+                aggregatedDetail.append("<li>").append(finding.detail()).append("</li>");
+                if (aggregatedEvidence.size() < MAX_AGGREGATED_EVIDENCE)
+                    aggregatedEvidence.add(finding.evidence());
+            }
+            aggregatedDetail.append("</ul>");
+
+            var aggregatedKey = Key.endpoint(key.endpoint());
+            issues.put(aggregatedDetail.toString(), new Entry(aggregatedKey, ++aggregate.revision));
+            aggregate.issue = issue(AGGREGATE_ISSUE_NAME, aggregatedDetail.toString(), url, aggregatedEvidence);
+            return aggregate.issue;
+        }
+    }
+
+    /**
+     * Decides by the indexed keys of both issues, or by their details for issues the index does not know,
+     * such as those reported before the extension was reloaded.
+     */
+    ConsolidationAction consolidate(AuditIssue newIssue, AuditIssue existingIssue) {
+        var newEntry = issues.get(newIssue.detail());
+        var existingEntry = issues.get(existingIssue.detail());
+
+        if (newEntry == null || existingEntry == null)
+            return existingIssue.detail().equals(newIssue.detail()) ? ConsolidationAction.KEEP_EXISTING : ConsolidationAction.KEEP_BOTH;
+
+        if (!newEntry.key().equals(existingEntry.key()))
+            return ConsolidationAction.KEEP_BOTH;
+
+        return newEntry.revision() > existingEntry.revision() ? ConsolidationAction.KEEP_NEW : ConsolidationAction.KEEP_EXISTING;
+    }
+
+    private static AuditIssue issue(String issueName, String detail, String url, List<HttpRequestResponse> evidence) {
+        return auditIssue(
+                issueName,
+                detail,
+                null,
+                url,
+                AuditIssueSeverity.INFORMATION,
+                AuditIssueConfidence.FIRM,
+                null,
+                null,
+                AuditIssueSeverity.INFORMATION,
+                evidence
+        );
+    }
+}
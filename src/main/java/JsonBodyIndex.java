@@ -0,0 +1,147 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Single streaming pass over a JSON body that maps every property to its JSON type and the byte offsets
+ * of its value. Built once per base request and shared by all of its insertion points.
+ *
+ * Every property records its path ({@code user.roles[0]}) and is indexed by name, where array elements take the
+ * name of the property holding the array. Duplicate keys keep every occurrence in document order.
+ */
+final class JsonBodyIndex {
+
+    enum Type {
+        STRING("string"), NUMBER("number"), BOOL("bool"), NULL("null"), OBJECT("object"), ARRAY("array");
+
+        private final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * @param valueStart offset of the first byte of the value, including the opening quote of strings
+     * @param valueEnd   offset just past the value, including the closing quote of strings
+     * @param value      decoded text of scalar values, {@code null} for objects and arrays
+     */
+    record Property(String path, String name, Type type, int valueStart, int valueEnd, String value) { }
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final JsonBodyIndex EMPTY = new JsonBodyIndex();
+
+    private final List<Property> properties = new ArrayList<>();
+    private final Map<String, List<Property>> byName = new HashMap<>();
+
+    private record Frame(String path, String name, boolean array, int start, int[] nextIndex) { }
+
+    private JsonBodyIndex() { }
+
+    /**
+     * Indexes the body, returning an empty index when it is not valid JSON.
+     */
+    static JsonBodyIndex parse(byte[] body) {
+        var index = new JsonBodyIndex();
+
+        try (var parser = FACTORY.createParser(body)) {
+            var frames = new ArrayDeque<Frame>();
+            String fieldName = null;
+            JsonToken token;
+
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    fieldName = parser.currentName();
+                    continue;
+                }
+
+                if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    var frame = frames.pop();
+                    if (!frames.isEmpty())
+                        index.add(new Property(frame.path(), frame.name(), token == JsonToken.END_OBJECT ? Type.OBJECT : Type.ARRAY,
+                                frame.start(), (int) parser.currentLocation().getByteOffset(), null));
+                    continue;
+                }
+
+                var parent = frames.peek();
+                var path = parent == null ? "" : parent.array()
+                        ? parent.path() + "[" + parent.nextIndex()[0]++ + "]"
+                        : parent.path().isEmpty() ? fieldName : parent.path() + "." + fieldName;
+                var name = parent == null ? "" : parent.array() ? parent.name() : fieldName;
+                var start = (int) parser.currentTokenLocation().getByteOffset();
+
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    frames.push(new Frame(path, name, token == JsonToken.START_ARRAY, start, new int[1]));
+                    continue;
+                }
+
+                var value = parser.getText();
+                var end = (int) parser.currentLocation().getByteOffset();
+                index.add(new Property(path, name, scalarType(token), start, end, value));
+            }
+        } catch (IOException ex) {
+            return EMPTY;
+        }
+
+        return index;
+    }
+
+    /**
+     * All properties, scalars in document order; objects and arrays follow their last member.
+     */
+    List<Property> properties() {
+        return properties;
+    }
+
+    List<Property> byName(String name) {
+        return byName.getOrDefault(name, List.of());
+    }
+
+    /**
+     * Finds the property an insertion point refers to: the first property with the given name whose
+     * value equals the base value, or the first property with that name when none does.
+     */
+    Optional<Property> find(String name, String baseValue) {
+        var properties = byName(name);
+        for (var property : properties) {
+            if (Objects.equals(property.value(), baseValue))
+                return Optional.of(property);
+        }
+
+        return properties.stream().findFirst();
+    }
+
+    /**
+     * Finds the scalar property whose value spans the given body offset, such as the value offset Burp parses
+     * for a JSON parameter.
+     */
+    Optional<Property> at(int offset) {
+        for (var property : properties) {
+            if (property.value() != null && property.valueStart() <= offset && offset < property.valueEnd())
+                return Optional.of(property);
+        }
+
+        return Optional.empty();
+    }
+
+    private void add(Property property) {
+        properties.add(property);
+        byName.computeIfAbsent(property.name(), key -> new ArrayList<>(1)).add(property);
+    }
+
+    private static Type scalarType(JsonToken token) {
+        return switch (token) {
+            case VALUE_STRING -> Type.STRING;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> Type.NUMBER;
+            case VALUE_TRUE, VALUE_FALSE -> Type.BOOL;
+            default -> Type.NULL;
+        };
+    }
+}
@@ -0,0 +1,131 @@
+import burp.api.montoya.MontoyaApi;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Suite tab showing the live {@link ScanMetrics}, refreshed every second, with JSON and CSV export.
+ */
+class MetricsTab {
+
+    private static final String[] COLUMNS = {"Metric", "Kind", "Unit", "Count", "Total", "Mean", "p50", "p95", "p99", "Max"};
+
+    private final MontoyaApi api;
+    private final ScanMetrics metrics;
+    private final JPanel panel = new JPanel(new BorderLayout());
+    private final MetricsTableModel model = new MetricsTableModel();
+    private final Timer refreshTimer;
+
+    MetricsTab(MontoyaApi api, ScanMetrics metrics)
+    {
+        this.api = api;
+        this.metrics = metrics;
+
+        var table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+
+        var exportJson = new JButton("Export JSON");
+        exportJson.addActionListener(event -> export("json"));
+        var exportCsv = new JButton("Export CSV");
+        exportCsv.addActionListener(event -> export("csv"));
+        var reset = new JButton("Reset");
+        reset.addActionListener(event -> {
+            metrics.reset();
+            refresh();
+        });
+
+        var buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(exportJson);
+        buttons.add(exportCsv);
+        buttons.add(reset);
+
+        panel.add(buttons, BorderLayout.NORTH);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        refreshTimer = new Timer(1000, event -> refresh());
+    }
+
+    Component component() {
+        return panel;
+    }
+
+    void start() {
+        refreshTimer.start();
+    }
+
+    void stop() {
+        refreshTimer.stop();
+    }
+
+    private void refresh() {
+        if (panel.isShowing())
+            model.update(metrics.snapshot());
+    }
+
+    private void export(String format) {
+        var chooser = new JFileChooser();
+        chooser.setSelectedFile(new java.io.File("typeconfusion-metrics." + format));
+        if (chooser.showSaveDialog(panel) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        try {
+            var content = format.equals("json") ? metrics.toJson() : metrics.toCsv();
+            Files.writeString(chooser.getSelectedFile().toPath(), content, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            api.logging().logToError("Could not export metrics: " + ex.getMessage());
+        }
+    }
+
+    private static final class MetricsTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+
+        private List<ScanMetrics.Row> rows = List.of();
+
+        private void update(List<ScanMetrics.Row> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column < 3 ? String.class : Long.class;
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int column) {
+            var row = rows.get(rowIndex);
+            return switch (column) {
+                case 0 -> row.name();
+                case 1 -> row.kind();
+                case 2 -> row.unit();
+                case 3 -> row.count();
+                case 4 -> row.total();
+                case 5 -> row.mean();
+                case 6 -> row.p50();
+                case 7 -> row.p95();
+                case 8 -> row.p99();
+                default -> row.max();
+            };
+        }
+    }
+}
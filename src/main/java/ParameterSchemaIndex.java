@@ -0,0 +1,141 @@
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Records which types each parameter carries in the traffic the check observes, per endpoint and scan-wide
+ * per parameter name. URL and urlencoded parameters count as strings, or as arrays when sent with array
+ * syntax ({@code name[]}, {@code name[0]} or a repeated name); JSON properties count with their JSON type
+ * under their path, so {@code user.id} and {@code item.id} of one body are told apart.
+ *
+ * A probe that sends a type the parameter was already seen carrying on the endpoint tests behaviour the
+ * application's own clients rely on, so it is skipped. Probes sending a type the parameter name carries on
+ * other endpoints are deferred to a later phase.
+ *
+ * Memory is bounded: least recently observed endpoints are evicted and each endpoint tracks a fixed number
+ * of parameters.
+ */
+class ParameterSchemaIndex {
+
+    /**
+     * @param name the parameter name without array syntax, or the path of a JSON property
+     */
+    record Key(ProbeDefinition.Location location, String name) { }
+
+    private static final int MAX_PARAMETERS_PER_ENDPOINT = 256;
+
+    private final BoundedCache<EndpointSignature, ConcurrentHashMap<Key, AtomicInteger>> endpoints;
+    private final BoundedCache<Key, AtomicInteger> names;
+
+    ParameterSchemaIndex(int maxEndpoints)
+    {
+        this.endpoints = new BoundedCache<>(maxEndpoints, 0);
+        this.names = new BoundedCache<>(maxEndpoints * 4, 0);
+    }
+
+    /**
+     * Adds the parameters of a request to the index.
+     *
+     * @param jsonBody the index of the JSON body of the request, only asked for JSON requests
+     */
+    void observe(HttpRequest request, Supplier<JsonBodyIndex> jsonBody) {
+        var parameters = endpoints.computeIfAbsent(EndpointSignature.of(request), key -> new ConcurrentHashMap<>());
+
+        var query = new ConcurrentHashMap<String, Integer>();
+        var body = new ConcurrentHashMap<String, Integer>();
+        for (var parameter : request.parameters()) {
+            if (parameter.type() == HttpParameterType.URL)
+                query.merge(parameter.name(), 1, Integer::sum);
+            else if (parameter.type() == HttpParameterType.BODY)
+                body.merge(parameter.name(), 1, Integer::sum);
+        }
+        query.forEach((name, count) -> recordPair(parameters, ProbeDefinition.Location.QUERY, name, count));
+        body.forEach((name, count) -> recordPair(parameters, ProbeDefinition.Location.URLENCODED_BODY, name, count));
+
+        if (request.contentType() == ContentType.JSON) {
+            for (var property : jsonBody.get().properties()) {
+                // elements of an array are described by the array itself
+                if (!property.path().endsWith("]"))
+                    record(parameters, new Key(ProbeDefinition.Location.JSON_BODY, property.path()), property.type());
+            }
+        }
+    }
+
+    /**
+     * Drops the probes sending a type the parameter already carries on this endpoint and defers, by one cost
+     * step, those sending a type the parameter name carries elsewhere.
+     *
+     * @param name the parameter name, or the path of the property for {@link ProbeDefinition.Location#JSON_BODY}
+     */
+    List<ProbeDefinition> prioritise(List<ProbeDefinition> applicable, EndpointSignature endpoint, ProbeDefinition.Location location, String name) {
+        // array syntax only folds into the name for URL and urlencoded parameters, a JSON path is kept whole
+        var key = new Key(location, location == ProbeDefinition.Location.JSON_BODY ? name : baseName(name));
+        var parameters = endpoints.get(endpoint);
+        var seenHere = parameters != null ? mask(parameters.get(key)) : 0;
+        var seenElsewhere = mask(names.get(key));
+
+        return applicable.stream()
+                .filter(definition -> (seenHere & bit(definition.sendsType())) == 0)
+                .map(definition -> (seenElsewhere & bit(definition.sendsType())) != 0 ? definition.withCost(definition.cost() + 1) : definition)
+                .sorted(Comparator.comparingInt(ProbeDefinition::cost))
+                .toList();
+    }
+
+    private void recordPair(ConcurrentHashMap<Key, AtomicInteger> parameters, ProbeDefinition.Location location, String name, int count) {
+        var baseName = baseName(name);
+        var type = count > 1 || !baseName.equals(name) ? JsonBodyIndex.Type.ARRAY : JsonBodyIndex.Type.STRING;
+        record(parameters, new Key(location, baseName), type);
+    }
+
+    private void record(ConcurrentHashMap<Key, AtomicInteger> parameters, Key key, JsonBodyIndex.Type type) {
+        var types = parameters.get(key);
+        if (types == null) {
+            if (parameters.size() >= MAX_PARAMETERS_PER_ENDPOINT)
+                return;
+            types = parameters.computeIfAbsent(key, ignored -> new AtomicInteger());
+        }
+
+        var bit = 1 << type.ordinal();
+        types.getAndUpdate(mask -> mask | bit);
+        names.computeIfAbsent(key, ignored -> new AtomicInteger()).getAndUpdate(mask -> mask | bit);
+    }
+
+    /**
+     * Strips array syntax from a parameter name, {@code tags[]} and {@code tags[0]} become {@code tags}.
+     */
+    private static String baseName(String name) {
+        if (!name.endsWith("]"))
+            return name;
+
+        var open = name.lastIndexOf('[');
+        if (open <= 0)
+            return name;
+
+        for (int i = open + 1; i < name.length() - 1; i++) {
+            if (!Character.isDigit(name.charAt(i)))
+                return name;
+        }
+        return name.substring(0, open);
+    }
+
+    private static int mask(AtomicInteger types) {
+        return types != null ? types.get() : 0;
+    }
+
+    private static int bit(String typeLabel) {
+        if (typeLabel == null)
+            return 0;
+
+        for (var type : JsonBodyIndex.Type.values()) {
+            if (type.toString().equals(typeLabel))
+                return 1 << type.ordinal();
+        }
+        return 0;
+    }
+}
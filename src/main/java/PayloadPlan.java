@@ -0,0 +1,133 @@
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The set of {@link ProbeDefinition}s the check runs, and the scheduler that runs them cheapest first.
+ *
+ * Probes are sent in phases of equal cost. After each phase a probe is dropped when another probe of its
+ * family already confirmed, or when one of its dependencies ran without confirming, so follow-ups that
+ * cannot change the outcome are never sent.
+ */
+class PayloadPlan {
+
+    private static final String BUILT_IN = "/payload-plan.json";
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final List<ProbeDefinition> definitions;
+
+    /**
+     * @throws IllegalArgumentException when a definition lacks an id, location, template, issue name or description,
+     *                                  or two definitions share an id
+     */
+    PayloadPlan(List<ProbeDefinition> definitions)
+    {
+        var ids = new HashSet<String>();
+        for (var definition : definitions) {
+            require(definition.id(), "id", definition);
+            require(definition.location(), "location", definition);
+            require(definition.template(), "template", definition);
+            require(definition.issueName(), "issueName", definition);
+            require(definition.description(), "description", definition);
+
+            if (!ids.add(definition.id()))
+                throw new IllegalArgumentException("Duplicate probe id '" + definition.id() + "'");
+        }
+
+        this.definitions = definitions.stream()
+                .sorted(Comparator.comparingInt(ProbeDefinition::cost))
+                .toList();
+    }
+
+    static PayloadPlan builtIn() throws IOException {
+        try (var stream = PayloadPlan.class.getResourceAsStream(BUILT_IN)) {
+            if (stream == null)
+                throw new IOException("Missing " + BUILT_IN);
+            return new PayloadPlan(read(stream));
+        }
+    }
+
+    /**
+     * Returns a plan with the probes of {@code file} added to this plan's probes.
+     */
+    PayloadPlan withDefinitionsFrom(Path file) throws IOException {
+        try (var stream = Files.newInputStream(file)) {
+            var combined = new ArrayList<>(definitions);
+            combined.addAll(read(stream));
+            return new PayloadPlan(combined);
+        }
+    }
+
+    List<ProbeDefinition> applicable(ProbeDefinition.Location location, String jsonType) {
+        return definitions.stream()
+                .filter(definition -> definition.appliesTo(location, jsonType))
+                .toList();
+    }
+
+    /**
+     * Runs the applicable probes cheapest first, sending each phase of equal cost as one batch.
+     *
+     * @param sendPhase sends a batch of probes and returns the ones that confirmed
+     * @return the probes that confirmed
+     */
+    static <P> List<P> schedule(List<ProbeDefinition> applicable, Function<ProbeDefinition, P> build,
+                                Function<List<P>, List<P>> sendPhase, Function<P, ProbeDefinition> definitionOf) {
+        var confirmed = new ArrayList<P>();
+        var confirmedIds = new HashSet<String>();
+        var confirmedFamilies = new HashSet<String>();
+        var ranIds = new HashSet<String>();
+        var remaining = new ArrayList<>(applicable);
+
+        Predicate<ProbeDefinition> redundant = definition ->
+                confirmedFamilies.contains(definition.family())
+                        || definition.dependsOn().stream().anyMatch(id -> ranIds.contains(id) && !confirmedIds.contains(id))
+                        || definition.dependsOn().stream().anyMatch(id -> applicable.stream().noneMatch(other -> other.id().equals(id)));
+
+        while (true) {
+            remaining.removeIf(redundant);
+
+            var runnable = remaining.stream()
+                    .filter(definition -> confirmedIds.containsAll(definition.dependsOn()))
+                    .toList();
+            if (runnable.isEmpty())
+                return confirmed;
+
+            var cost = runnable.get(0).cost();
+            var phase = runnable.stream()
+                    .filter(definition -> definition.cost() == cost)
+                    .map(build)
+                    .filter(Objects::nonNull)
+                    .toList();
+
+            runnable.stream().filter(definition -> definition.cost() == cost).forEach(definition -> {
+                remaining.remove(definition);
+                ranIds.add(definition.id());
+            });
+
+            for (var probe : phase.isEmpty() ? List.<P>of() : sendPhase.apply(phase)) {
+                var definition = definitionOf.apply(probe);
+                confirmed.add(probe);
+                confirmedIds.add(definition.id());
+                confirmedFamilies.add(definition.family());
+            }
+        }
+    }
+
+    private static void require(Object value, String property, ProbeDefinition definition) {
+        if (value == null || (value instanceof String string && string.isBlank()))
+            throw new IllegalArgumentException("Probe definition " + (definition.id() != null ? "'" + definition.id() + "' " : "") + "has no " + property);
+    }
+
+    private static List<ProbeDefinition> read(InputStream stream) throws IOException {
+        return MAPPER.readValue(stream, new TypeReference<List<ProbeDefinition>>() { });
+    }
+}
@@ -0,0 +1,46 @@
+import java.util.List;
+
+/**
+ * Declarative description of one payload variant, loaded from a payload plan file.
+ *
+ * The template is expanded per insertion point and spliced over the parameter in the base request.
+ * For {@link Location#QUERY} and {@link Location#URLENCODED_BODY} it replaces the whole {@code name=value}
+ * pair and may use {@code {name}} and {@code {value}} (the URL-encoded base value). For {@link Location#JSON_BODY}
+ * it replaces the JSON value and may use {@code {name}}, {@code {json}} (the value as it appears in the body)
+ * and {@code {string}} (the base value serialised as a JSON string).
+ *
+ * @param jsonTypes   JSON types of the base value the probe applies to, empty for all ({@code string, number, bool, null})
+ * @param sendsType   JSON type the probe resubmits the value as ({@code string, number, bool, null, object, array}),
+ *                    used to skip probes for parameters already seen carrying that type
+ * @param family      probes of the same family prove the same thing, once one confirms the rest are skipped
+ * @param cost        relative cost, cheaper probes are sent first
+ * @param dependsOn   ids of probes that must have confirmed before this one is sent
+ * @param description how the value was resubmitted, used in the issue detail
+ */
+record ProbeDefinition(String id, Location location, List<String> jsonTypes, String template, String sendsType, String family, int cost,
+                       List<String> dependsOn, String issueName, String description) {
+
+    enum Location { QUERY, URLENCODED_BODY, JSON_BODY }
+
+    ProbeDefinition {
+        jsonTypes = jsonTypes != null ? List.copyOf(jsonTypes) : List.of();
+        dependsOn = dependsOn != null ? List.copyOf(dependsOn) : List.of();
+        family = family != null ? family : id;
+    }
+
+    ProbeDefinition withCost(int cost) {
+        return new ProbeDefinition(id, location, jsonTypes, template, sendsType, family, cost, dependsOn, issueName, description);
+    }
+
+    boolean appliesTo(Location location, String jsonType) {
+        return this.location == location && (jsonTypes.isEmpty() || jsonType == null || jsonTypes.contains(jsonType));
+    }
+
+    String expand(String name, String value, String json, String string) {
+        return template
+                .replace("{name}", name)
+                .replace("{value}", value != null ? value : "")
+                .replace("{json}", json != null ? json : "")
+                .replace("{string}", string != null ? string : "");
+    }
+}
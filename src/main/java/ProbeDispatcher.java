@@ -0,0 +1,156 @@
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends independent probe requests in parallel. Every send goes through the {@link AdaptiveRateController},
+ * and throttled responses are retried once the host's pause has passed. Identical probes are sent once
+ * through the {@link ProbeResponseCache}, except for the variance samples whose repeats are the point.
+ */
+class ProbeDispatcher {
+
+    private final MontoyaApi api;
+    private final AdaptiveRateController rateController;
+    private final int maxRetries;
+    private final ProbeResponseCache responseCache;
+    private final RequestBudget requestBudget;
+    private final ScanMetrics metrics;
+    private final ExecutorService executor;
+
+    /**
+     * @param responseCache shares responses between identical probes, {@code null} sends every probe
+     * @param requestBudget charged with every request sent, {@code null} when the scan has no budget
+     */
+    ProbeDispatcher(MontoyaApi api, AdaptiveRateController rateController, int maxRetries, ProbeResponseCache responseCache,
+                    RequestBudget requestBudget, ScanMetrics metrics)
+    {
+        this.api = api;
+        this.rateController = rateController;
+        this.maxRetries = maxRetries;
+        this.responseCache = responseCache;
+        this.requestBudget = requestBudget;
+        this.metrics = metrics;
+
+        var threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, "TypeConfusion-probe-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    HttpRequestResponse send(ScanMetrics.Phase phase, HttpRequest request) {
+        return sendAll(phase, List.of(request)).get(0);
+    }
+
+    /**
+     * Whether a probe got a response that can be compared with the base response: one arrived and it is not still
+     * throttled after the retries.
+     */
+    static boolean usable(HttpRequestResponse requestResponse) {
+        return requestResponse != null && requestResponse.response() != null && !AdaptiveRateController.isThrottled(requestResponse.response());
+    }
+
+    private HttpRequestResponse sendCounted(ScanMetrics.Phase phase, HttpRequest request) {
+        for (var attempt = 0; ; attempt++) {
+            var host = rateController.acquire(request.httpService());
+            var start = System.nanoTime();
+            HttpRequestResponse requestResponse = null;
+            try {
+                requestResponse = api.http().sendRequest(request);
+            } finally {
+                var latency = System.nanoTime() - start;
+                metrics.probeLatency(phase, latency);
+                rateController.release(host, latency, requestResponse != null ? requestResponse.response() : null);
+            }
+
+            if (attempt >= maxRetries || !AdaptiveRateController.isThrottled(requestResponse.response()))
+                return requestResponse;
+
+            metrics.increment("requests.throttledRetries");
+        }
+    }
+
+    AdaptiveRateController rateController() {
+        return rateController;
+    }
+
+    /**
+     * @return the cache shared by identical probes, or {@code null} when it is disabled
+     */
+    ProbeResponseCache responseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sends all requests concurrently and returns their responses in the order of the requests.
+     */
+    List<HttpRequestResponse> sendAll(ScanMetrics.Phase phase, List<HttpRequest> requests) {
+        var shared = responseCache != null && phase != ScanMetrics.Phase.VARIANCE;
+        var claims = new ArrayList<ProbeResponseCache.Claim>(requests.size());
+        var sends = new ArrayList<Callable<Void>>();
+        var owned = new ArrayList<ProbeResponseCache.Claim>();
+
+        for (var request : requests) {
+            var claim = shared ? responseCache.claim(request) : ProbeResponseCache.Claim.unshared();
+            claims.add(claim);
+            if (claim.owner()) {
+                if (requestBudget != null)
+                    requestBudget.charge(request.httpService(), 1);
+                owned.add(claim);
+                sends.add(() -> {
+                    claim.complete(() -> sendCounted(phase, request));
+                    return null;
+                });
+            }
+        }
+
+        metrics.requestsSent(phase, sends.size());
+        if (sends.size() < requests.size())
+            metrics.add("requests.deduplicated", requests.size() - sends.size());
+
+        try {
+            if (sends.size() == 1)
+                sends.get(0).call();
+            else if (!sends.isEmpty())
+                await(sends.stream().map(executor::submit).toList());
+
+            var responses = new ArrayList<HttpRequestResponse>(requests.size());
+            for (var claim : claims)
+                responses.add(claim.response().get());
+            return responses;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Probe dispatch interrupted");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException(ex.getCause());
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            owned.forEach(ProbeResponseCache.Claim::abandon);
+        }
+    }
+
+    private static void await(List<Future<Void>> futures) throws InterruptedException, ExecutionException {
+        try {
+            for (var future : futures)
+                future.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            futures.forEach(future -> future.cancel(true));
+            throw ex;
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,171 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed layer in front of the probe sends. Requests are keyed by a hash of their target and
+ * normalised content, so the byte-identical gate and payload probes that overlapping scans and near-duplicate
+ * base requests build are sent once: concurrent identical sends wait for the one in flight, and repeats within
+ * the time-to-live are answered from the response it returned. Kept responses are bounded in number and in the
+ * total bytes of their bodies, and expired ones are purged as new responses arrive.
+ */
+class ProbeResponseCache {
+
+    private static final int MAX_CACHED_BODY_BYTES = 64 * 1024;
+
+    private final Map<String, CompletableFuture<HttpRequestResponse>> inFlight = new ConcurrentHashMap<>();
+    private final BoundedCache<String, HttpRequestResponse> responses;
+    private final boolean retainResponses;
+
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of remembered responses
+     * @param maxBytes   maximum total size of the bodies of remembered responses
+     * @param ttlMillis  how long a response answers repeats of its request, {@code 0} only coalesces sends in flight
+     */
+    ProbeResponseCache(int maxEntries, long maxBytes, long ttlMillis)
+    {
+        this.responses = new BoundedCache<>(maxEntries, ttlMillis, maxBytes, requestResponse -> requestResponse.response().body().length());
+        this.retainResponses = ttlMillis > 0 && maxBytes > 0;
+    }
+
+    /**
+     * A pending or completed response for one request. The owner of a claim sends the request and
+     * completes it; every other claim of the same request shares the owner's response.
+     */
+    static final class Claim {
+
+        private final ProbeResponseCache cache;
+        private final String key;
+        private final CompletableFuture<HttpRequestResponse> response;
+        private final boolean owner;
+
+        private Claim(ProbeResponseCache cache, String key, CompletableFuture<HttpRequestResponse> response, boolean owner)
+        {
+            this.cache = cache;
+            this.key = key;
+            this.response = response;
+            this.owner = owner;
+        }
+
+        /**
+         * A claim that is not shared with any other send.
+         */
+        static Claim unshared() {
+            return new Claim(null, null, new CompletableFuture<>(), true);
+        }
+
+        CompletableFuture<HttpRequestResponse> response() {
+            return response;
+        }
+
+        boolean owner() {
+            return owner;
+        }
+
+        /**
+         * Sends the request through {@code send} and hands its response to every claim of the request.
+         */
+        void complete(Supplier<HttpRequestResponse> send) {
+            HttpRequestResponse requestResponse;
+            try {
+                requestResponse = send.get();
+            } catch (RuntimeException ex) {
+                forget();
+                response.completeExceptionally(ex);
+                throw ex;
+            }
+
+            if (cache != null && cache.retainResponses && cacheable(requestResponse))
+                cache.responses.put(key, requestResponse);
+            forget();
+            response.complete(requestResponse);
+        }
+
+        /**
+         * Releases the claims waiting on a send that will not happen.
+         */
+        void abandon() {
+            if (!response.isDone()) {
+                forget();
+                response.completeExceptionally(new CancellationException("Probe send abandoned"));
+            }
+        }
+
+        private void forget() {
+            if (cache != null)
+                cache.inFlight.remove(key, response);
+        }
+    }
+
+    Claim claim(HttpRequest request) {
+        var key = key(request);
+
+        var retained = responses.get(key);
+        if (retained != null) {
+            cached.incrementAndGet();
+            return new Claim(this, key, CompletableFuture.completedFuture(retained), false);
+        }
+
+        var pending = new CompletableFuture<HttpRequestResponse>();
+        var response = inFlight.putIfAbsent(key, pending);
+        if (response != null) {
+            coalesced.incrementAndGet();
+            return new Claim(this, key, response, false);
+        }
+
+        return new Claim(this, key, pending, true);
+    }
+
+    /**
+     * Throttled responses and missing responses are transient and not served to later sends,
+     * large bodies are not kept to bound the memory of the cache.
+     */
+    private static boolean cacheable(HttpRequestResponse requestResponse) {
+        var response = requestResponse != null ? requestResponse.response() : null;
+        return response != null
+                && !AdaptiveRateController.isThrottled(response)
+                && response.body().length() <= MAX_CACHED_BODY_BYTES;
+    }
+
+    /**
+     * Hashes the target, request line, headers and body. Header names are case-folded and sorted, and the
+     * derived {@code Content-Length} is left out, so requests differing only in header order share a key.
+     */
+    static String key(HttpRequest request) {
+        var service = request.httpService();
+        var head = new StringBuilder()
+                .append(service.secure() ? "https://" : "http://").append(service.host()).append(':').append(service.port()).append('\n')
+                .append(request.method()).append(' ').append(request.path()).append('\n');
+        request.headers().stream()
+                .filter(header -> !header.name().equalsIgnoreCase("Content-Length"))
+                .map(header -> header.name().toLowerCase(Locale.ROOT) + ": " + header.value().trim())
+                .sorted()
+                .forEach(header -> head.append(header).append('\n'));
+
+        return Digests.sha256(head.append('\n').toString().getBytes(StandardCharsets.UTF_8), request.body().getBytes());
+    }
+
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    long cached() {
+        return cached.get();
+    }
+
+    String statistics() {
+        return "Probe response cache: " + coalesced() + " sends coalesced, " + cached() + " served from cache, "
+                + responses.size() + " entries of " + responses.weight() / 1024 + " KiB";
+    }
+}
@@ -0,0 +1,132 @@
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Spends a scan-wide and per-host request budget on the most promising insertion points. Burp decides the order
+ * in which insertion points are audited, so the budget is enforced by admission: every insertion point is scored
+ * from its type, name and content type, blended with the hit rate of its parameter name so far, and a low score
+ * may only spend the part of the budget that is left above a reserve, which is kept for higher scores.
+ * The budget is checked before an insertion point is tested, so it is exceeded by at most the probes in flight.
+ */
+class RequestBudget {
+
+    /** fraction of the budget a zero score leaves for higher scores */
+    private static final double RESERVE = 0.5;
+    /** weight of the prior score, in insertion points, against the observed hit rate of a parameter name */
+    private static final double PRIOR_WEIGHT = 4;
+
+    private static final Pattern HIGH_YIELD_NAME = Pattern.compile(
+            "(?i:(^|[_.-])(id|ids|uid|user(name)?|user_?id|account|role|roles|admin|is_?admin|group|permissions?|scope|type|email|owner|amount|price|quantity|qty|limit|page|count))$|[a-z]Id$");
+    private static final Pattern LOW_YIELD_NAME = Pattern.compile(
+            "^(utm_.*|_ga|_gl|gclid|fbclid|mc_[a-z]+|ref|referrer|_|cb|cachebuster|nonce|timestamp|ts|t|v|ver|version|csrf.*|_?token|lang|locale|callback|jsonp)$");
+
+    private record Outcomes(AtomicInteger tested, AtomicInteger confirmed) { }
+
+    private final long maxRequests;
+    private final long maxRequestsPerHost;
+    private final AtomicLong spent = new AtomicLong();
+    private final Map<String, AtomicLong> spentPerHost = new ConcurrentHashMap<>();
+    private final BoundedCache<String, Outcomes> outcomes = new BoundedCache<>(10_000, 0);
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    /**
+     * @param maxRequests        requests the scan may send, {@code 0} for no limit
+     * @param maxRequestsPerHost requests the scan may send to one host, {@code 0} for no limit
+     */
+    RequestBudget(long maxRequests, long maxRequestsPerHost)
+    {
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Whether the insertion point may be tested with what is left of the budget for its host.
+     */
+    boolean admit(HttpRequestResponse baseRequestResponse, AuditInsertionPointType type, String name) {
+        var remaining = remaining(baseRequestResponse.httpService());
+        if (remaining > RESERVE * (1 - score(baseRequestResponse, type, name))) {
+            admitted.incrementAndGet();
+            return true;
+        }
+
+        deferred.incrementAndGet();
+        return false;
+    }
+
+    void charge(HttpService service, int requests) {
+        spent.addAndGet(requests);
+        if (maxRequestsPerHost > 0)
+            spentPerHost.computeIfAbsent(host(service), ignored -> new AtomicLong()).addAndGet(requests);
+    }
+
+    /**
+     * Feeds the outcome of a tested insertion point back into the score of its parameter name.
+     */
+    void record(String name, boolean confirmed) {
+        var outcome = outcomes.computeIfAbsent(name.toLowerCase(Locale.ROOT), ignored -> new Outcomes(new AtomicInteger(), new AtomicInteger()));
+        outcome.tested().incrementAndGet();
+        if (confirmed)
+            outcome.confirmed().incrementAndGet();
+    }
+
+    /**
+     * Likelihood in {@code [0, 1]} that testing the insertion point yields a finding.
+     */
+    double score(HttpRequestResponse baseRequestResponse, AuditInsertionPointType type, String name) {
+        var prior = switch (type) {
+            case PARAM_JSON -> 0.5;
+            case PARAM_BODY -> 0.35;
+            default -> 0.3;
+        };
+
+        if (baseRequestResponse.request().contentType() == ContentType.JSON)
+            prior *= 1.2;
+        if (HIGH_YIELD_NAME.matcher(name).find())
+            prior *= 1.6;
+        else if (LOW_YIELD_NAME.matcher(name.toLowerCase(Locale.ROOT)).matches())
+            prior *= 0.25;
+        prior = Math.min(1, prior);
+
+        var outcome = outcomes.get(name.toLowerCase(Locale.ROOT));
+        if (outcome == null)
+            return prior;
+
+        return (outcome.confirmed().get() + PRIOR_WEIGHT * prior) / (outcome.tested().get() + PRIOR_WEIGHT);
+    }
+
+    /**
+     * Fraction of the budget left for the host, the smaller of the scan-wide and the per-host remainder.
+     */
+    private double remaining(HttpService service) {
+        var remaining = 1.0;
+        if (maxRequests > 0)
+            remaining = 1 - (double) spent.get() / maxRequests;
+        if (maxRequestsPerHost > 0) {
+            var host = spentPerHost.get(host(service));
+            if (host != null)
+                remaining = Math.min(remaining, 1 - (double) host.get() / maxRequestsPerHost);
+        }
+
+        return remaining;
+    }
+
+    private static String host(HttpService service) {
+        return service.host().toLowerCase(Locale.ROOT) + ":" + service.port();
+    }
+
+    String statistics() {
+        return "Request budget: " + spent.get() + (maxRequests > 0 ? " of " + maxRequests : "") + " requests spent, "
+                + admitted.get() + " insertion points admitted, " + deferred.get() + " over budget";
+    }
+}
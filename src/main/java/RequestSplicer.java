@@ -0,0 +1,170 @@
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.core.Marker;
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.requests.HttpRequest;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Builds mutated requests by splicing payload bytes over known value offsets of the base request.
+ * Each mutated request is assembled in one pass into a single output buffer; when the body length changes
+ * the Content-Length value is spliced in the same pass, so no regex or re-serialisation is involved.
+ */
+final class RequestSplicer {
+
+    /**
+     * Replaces the bytes in {@code [start, end)} of the base request with {@code replacement}.
+     */
+    record Edit(int start, int end, byte[] replacement) {
+
+        static Edit of(int start, int end, String replacement) {
+            return new Edit(start, end, replacement.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * @param markers position of every edit's replacement in the spliced request, in the order the edits were given
+     */
+    record Spliced(HttpRequest request, List<Marker> markers) { }
+
+    private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final HttpService service;
+    private final byte[] raw;
+    private final int bodyOffset;
+    private final int contentLengthStart;
+    private final int contentLengthEnd;
+
+    RequestSplicer(HttpService service, HttpRequest baseRequest)
+    {
+        this.service = service;
+        this.raw = baseRequest.toByteArray().getBytes();
+        this.bodyOffset = baseRequest.bodyOffset();
+
+        var valueRange = findContentLengthValue(raw, bodyOffset);
+        this.contentLengthStart = valueRange[0];
+        this.contentLengthEnd = valueRange[1];
+    }
+
+    int bodyOffset() {
+        return bodyOffset;
+    }
+
+    int length() {
+        return raw.length;
+    }
+
+    byte byteAt(int index) {
+        return raw[index];
+    }
+
+    String sliceToString(int start, int end) {
+        return sliceToString(start, end, StandardCharsets.ISO_8859_1);
+    }
+
+    String sliceToString(int start, int end, Charset charset) {
+        return new String(raw, start, end - start, charset);
+    }
+
+    Spliced splice(int start, int end, byte[] replacement) {
+        return splice(List.of(new Edit(start, end, replacement)));
+    }
+
+    Spliced splice(int start, int end, String replacement) {
+        return splice(List.of(Edit.of(start, end, replacement)));
+    }
+
+    /**
+     * Applies non-overlapping edits to the base request in a single pass.
+     */
+    Spliced splice(List<Edit> edits) {
+        var ordered = new ArrayList<Edit>(edits.size() + 1);
+        ordered.addAll(edits);
+
+        var bodyDelta = 0;
+        for (var edit : edits) {
+            if (edit.start() >= bodyOffset)
+                bodyDelta += edit.replacement().length - (edit.end() - edit.start());
+        }
+
+        if (bodyDelta != 0 && contentLengthStart >= 0) {
+            var contentLength = raw.length - bodyOffset + bodyDelta;
+            ordered.add(Edit.of(contentLengthStart, contentLengthEnd, Integer.toString(contentLength)));
+        }
+        ordered.sort(Comparator.comparingInt(Edit::start));
+
+        var length = raw.length;
+        for (var edit : ordered)
+            length += edit.replacement().length - (edit.end() - edit.start());
+
+        var output = new byte[length];
+        var markerStarts = new int[ordered.size()];
+        var position = 0;
+        var written = 0;
+
+        for (int i = 0; i < ordered.size(); i++) {
+            var edit = ordered.get(i);
+            System.arraycopy(raw, position, output, written, edit.start() - position);
+            written += edit.start() - position;
+
+            markerStarts[i] = written;
+            System.arraycopy(edit.replacement(), 0, output, written, edit.replacement().length);
+            written += edit.replacement().length;
+            position = edit.end();
+        }
+        System.arraycopy(raw, position, output, written, raw.length - position);
+
+        var markers = new ArrayList<Marker>(edits.size());
+        for (var edit : edits) {
+            var i = ordered.indexOf(edit);
+            markers.add(Marker.marker(markerStarts[i], markerStarts[i] + edit.replacement().length));
+        }
+
+        return new Spliced(HttpRequest.httpRequest(service, ByteArray.byteArray(output)), markers);
+    }
+
+    /**
+     * Locates the value of the Content-Length header, trimmed of surrounding whitespace, or {@code [-1, -1]}.
+     */
+    private static int[] findContentLengthValue(byte[] raw, int bodyOffset) {
+        var lineStart = 0;
+        while (lineStart < bodyOffset) {
+            var lineEnd = lineStart;
+            while (lineEnd < bodyOffset && raw[lineEnd] != '\n')
+                lineEnd++;
+
+            if (startsWithIgnoreCase(raw, lineStart, lineEnd, CONTENT_LENGTH)) {
+                var start = lineStart + CONTENT_LENGTH.length;
+                var end = lineEnd;
+                while (start < end && (raw[start] == ' ' || raw[start] == '\t'))
+                    start++;
+                while (end > start && (raw[end - 1] == '\r' || raw[end - 1] == ' ' || raw[end - 1] == '\t'))
+                    end--;
+                return new int[] { start, end };
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return new int[] { -1, -1 };
+    }
+
+    private static boolean startsWithIgnoreCase(byte[] raw, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            var b = raw[start + i];
+            if (b >= 'A' && b <= 'Z')
+                b += 'a' - 'A';
+            if (b != prefix[i])
+                return false;
+        }
+
+        return true;
+    }
+}
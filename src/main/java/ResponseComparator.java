@@ -0,0 +1,33 @@
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.util.List;
+
+/**
+ * One way of deciding whether a probe response differs from the base response. The base response is
+ * reduced to a fingerprint once and cached, every probe response is fingerprinted and compared to it.
+ *
+ * @param <F> the fingerprint type
+ */
+interface ResponseComparator<F> {
+
+    String name();
+
+    /**
+     * @param body      the response body, fetched once and shared by all comparators
+     * @param reflected values the probe may have reflected into the response, already encoded as bytes
+     */
+    F fingerprint(HttpResponse response, byte[] body, List<byte[]> reflected);
+
+    /**
+     * @param profile natural variance of the endpoint, {@code null} when it has not been measured
+     */
+    boolean changed(F base, F check, VarianceProfile profile);
+
+    /**
+     * Whether the fingerprint depends on the reflected values, in which case the base fingerprint is cached
+     * per set of reflected values instead of once per base response.
+     */
+    default boolean stripsReflections() {
+        return false;
+    }
+}
@@ -0,0 +1,228 @@
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The built-in {@link ResponseComparator}s.
+ */
+final class ResponseComparators {
+
+    private ResponseComparators() { }
+
+    static ResponseComparator<?> byName(String name, int simHashDistance) {
+        return switch (name.trim().toLowerCase()) {
+            case "length" -> new Length(40);
+            case "headers" -> new HeaderSet();
+            case "simhash" -> new SimHash(simHashDistance);
+            case "stripped" -> new ReflectionStrippedHash();
+            default -> throw new IllegalArgumentException("Unknown response comparator '" + name + "'");
+        };
+    }
+
+    /**
+     * Body length within a percentage window, the original heuristic of the check.
+     */
+    static final class Length implements ResponseComparator<Integer> {
+        private final int tolerancePercent;
+
+        Length(int tolerancePercent) {
+            this.tolerancePercent = tolerancePercent;
+        }
+
+        @Override
+        public String name() {
+            return "length";
+        }
+
+        @Override
+        public Integer fingerprint(HttpResponse response, byte[] body, List<byte[]> reflected) {
+            return body.length;
+        }
+
+        @Override
+        public boolean changed(Integer base, Integer check, VarianceProfile profile) {
+            var tolerance = profile != null ? Math.max(tolerancePercent, profile.lengthTolerancePercent()) : tolerancePercent;
+            return base > check + check / 100 * tolerance
+                    || check > base + base / 100 * tolerance;
+        }
+    }
+
+    /**
+     * Set of response header names, ignoring headers that vary between identical requests.
+     */
+    static final class HeaderSet implements ResponseComparator<Set<String>> {
+        private static final Set<String> VOLATILE = Set.of(
+                "date", "expires", "age", "etag", "last-modified", "content-length", "set-cookie",
+                "x-request-id", "x-correlation-id", "x-amzn-requestid", "x-amz-cf-id", "cf-ray", "server-timing");
+
+        @Override
+        public String name() {
+            return "headers";
+        }
+
+        @Override
+        public Set<String> fingerprint(HttpResponse response, byte[] body, List<byte[]> reflected) {
+            var names = new TreeSet<String>();
+            for (var header : response.headers()) {
+                var name = header.name().toLowerCase();
+                if (!VOLATILE.contains(name))
+                    names.add(name);
+            }
+            return names;
+        }
+
+        @Override
+        public boolean changed(Set<String> base, Set<String> check, VarianceProfile profile) {
+            if (profile != null && !profile.headersStable())
+                return false;
+
+            return !base.equals(check);
+        }
+    }
+
+    /**
+     * 64 bit SimHash over 3-token shingles of the body, computed in one streaming pass over the bytes.
+     * Responses are considered changed when more than {@code maxDistance} bits differ.
+     */
+    static final class SimHash implements ResponseComparator<Long> {
+        private final int maxDistance;
+
+        SimHash(int maxDistance) {
+            this.maxDistance = maxDistance;
+        }
+
+        @Override
+        public String name() {
+            return "simhash";
+        }
+
+        @Override
+        public Long fingerprint(HttpResponse response, byte[] body, List<byte[]> reflected) {
+            return simHash(body);
+        }
+
+        @Override
+        public boolean changed(Long base, Long check, VarianceProfile profile) {
+            var distance = profile != null ? Math.max(maxDistance, profile.simHashDistance()) : maxDistance;
+            return Long.bitCount(base ^ check) > distance;
+        }
+
+        static long simHash(byte[] body) {
+            var weights = new int[64];
+            long previous = 0, beforePrevious = 0, token = FNV_OFFSET;
+            var tokenLength = 0;
+            var tokens = 0;
+
+            for (var i = 0; i <= body.length; i++) {
+                var b = i < body.length ? body[i] : (byte) ' ';
+                if (isTokenByte(b)) {
+                    token = (token ^ (b & 0xff)) * FNV_PRIME;
+                    tokenLength++;
+                    continue;
+                }
+
+                if (tokenLength == 0)
+                    continue;
+
+                tokens++;
+                if (tokens >= 3)
+                    accumulate(weights, mix(beforePrevious * 31 * 31 + previous * 31 + token));
+
+                beforePrevious = previous;
+                previous = token;
+                token = FNV_OFFSET;
+                tokenLength = 0;
+            }
+
+            if (tokens > 0 && tokens < 3)
+                accumulate(weights, mix(beforePrevious * 31 * 31 + previous * 31));
+
+            long hash = 0;
+            for (var bit = 0; bit < 64; bit++) {
+                if (weights[bit] > 0)
+                    hash |= 1L << bit;
+            }
+            return hash;
+        }
+
+        private static void accumulate(int[] weights, long shingle) {
+            for (var bit = 0; bit < 64; bit++)
+                weights[bit] += (shingle >>> bit & 1) != 0 ? 1 : -1;
+        }
+    }
+
+    /**
+     * Exact 64 bit hash of the body with every reflection of the probe values skipped, so a response that
+     * only differs by echoing the payload back is treated as unchanged.
+     */
+    static final class ReflectionStrippedHash implements ResponseComparator<Long> {
+
+        @Override
+        public String name() {
+            return "stripped";
+        }
+
+        @Override
+        public boolean stripsReflections() {
+            return true;
+        }
+
+        @Override
+        public Long fingerprint(HttpResponse response, byte[] body, List<byte[]> reflected) {
+            long hash = FNV_OFFSET;
+            var i = 0;
+
+            outer:
+            while (i < body.length) {
+                for (var value : reflected) {
+                    if (value.length > 0 && regionMatches(body, i, value)) {
+                        i += value.length;
+                        continue outer;
+                    }
+                }
+
+                hash = (hash ^ (body[i] & 0xff)) * FNV_PRIME;
+                i++;
+            }
+
+            return hash;
+        }
+
+        @Override
+        public boolean changed(Long base, Long check, VarianceProfile profile) {
+            if (profile != null && !profile.bodyStable())
+                return false;
+
+            return !base.equals(check);
+        }
+
+        private static boolean regionMatches(byte[] body, int offset, byte[] value) {
+            if (offset + value.length > body.length)
+                return false;
+
+            for (var j = 0; j < value.length; j++) {
+                if (body[offset + j] != value[j])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static boolean isTokenByte(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b < 0;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb93fe53ec4ebL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
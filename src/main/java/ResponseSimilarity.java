@@ -0,0 +1,81 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides whether a probe response differs from its base response using the configured comparators.
+ * A differing status code always counts as a change; otherwise the responses differ when any comparator
+ * says so. Base fingerprints are computed once per base response content and cached for all of its probes.
+ */
+class ResponseSimilarity {
+
+    private final List<ResponseComparator<?>> comparators;
+    private final ContentKeys contentKeys;
+    private final BoundedCache<String, Map<String, Object>> baseFingerprints = new BoundedCache<>(256, 10 * 60 * 1000L);
+
+    ResponseSimilarity(List<ResponseComparator<?>> comparators)
+    {
+        this(comparators, new ContentKeys());
+    }
+
+    ResponseSimilarity(List<ResponseComparator<?>> comparators, ContentKeys contentKeys)
+    {
+        this.comparators = List.copyOf(comparators);
+        this.contentKeys = contentKeys;
+    }
+
+    /**
+     * @param profile   natural variance of the endpoint, {@code null} to use the comparators' fixed thresholds
+     * @param reflected probe values that may be echoed back in the check response
+     */
+    boolean changed(HttpRequestResponse baseRequestResponse, HttpRequestResponse checkRequestResponse, VarianceProfile profile, String... reflected) {
+        var baseResponse = baseRequestResponse.response();
+        var checkResponse = checkRequestResponse.response();
+
+        if (checkResponse == null)
+            return true;
+
+        if (baseResponse.statusCode() != checkResponse.statusCode())
+            return true;
+
+        var reflectedBytes = new ArrayList<byte[]>(reflected.length);
+        for (var value : reflected) {
+            if (value != null && !value.isEmpty())
+                reflectedBytes.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        var checkBody = checkResponse.body().getBytes();
+        for (var comparator : comparators) {
+            if (changed(comparator, baseResponse, checkResponse, checkBody, profile, reflectedBytes, reflected))
+                return true;
+        }
+
+        return false;
+    }
+
+    private <F> boolean changed(ResponseComparator<F> comparator, HttpResponse baseResponse, HttpResponse checkResponse,
+                                byte[] checkBody, VarianceProfile profile, List<byte[]> reflectedBytes, String[] reflected) {
+        var base = baseFingerprint(comparator, baseResponse, reflectedBytes, reflected);
+        var check = comparator.fingerprint(checkResponse, checkBody, reflectedBytes);
+        return comparator.changed(base, check, profile);
+    }
+
+    @SuppressWarnings("unchecked")
+    <F> F baseFingerprint(ResponseComparator<F> comparator, HttpResponse baseResponse, List<byte[]> reflectedBytes, String[] reflected) {
+        var key = comparator.stripsReflections()
+                ? comparator.name() + "\0" + String.join("\0", reflected)
+                : comparator.name();
+
+        var fingerprints = baseFingerprints.computeIfAbsent(contentKeys.of(baseResponse), ignored -> new ConcurrentHashMap<>());
+        var fingerprint = (F) fingerprints.get(key);
+        if (fingerprint == null) {
+            fingerprint = comparator.fingerprint(baseResponse, baseResponse.body().getBytes(), reflectedBytes);
+            fingerprints.put(key, fingerprint);
+        }
+
+        return fingerprint;
+    }
+}
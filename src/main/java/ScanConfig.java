@@ -0,0 +1,186 @@
+import burp.api.montoya.MontoyaApi;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tunables of the check. A setting is read from the JVM system property of the same name
+ * (e.g. {@code -Dtypeconfusion.probes.maxConcurrentPerHost=8} on the Burp command line), then from
+ * Burp's extension preferences, and falls back to a default when neither is set.
+ */
+class ScanConfig {
+
+    static final String MAX_CONCURRENT_PROBES_PER_HOST = "typeconfusion.probes.maxConcurrentPerHost";
+    static final String MAX_CONCURRENT_PROBES = "typeconfusion.rate.maxConcurrent";
+    static final String THROTTLE_MAX_RETRIES = "typeconfusion.rate.maxRetries";
+    static final String THROTTLE_MAX_PAUSE_SECONDS = "typeconfusion.rate.maxPauseSeconds";
+    static final String GROUP_TESTING_ENABLED = "typeconfusion.groupTesting.enabled";
+    static final String GROUP_TESTING_MIN_PARAMETERS = "typeconfusion.groupTesting.minParameters";
+    static final String GROUP_TESTING_MAX_GROUP_SIZE = "typeconfusion.groupTesting.maxGroupSize";
+    static final String GROUP_TESTING_LINGER_MILLIS = "typeconfusion.groupTesting.lingerMillis";
+    static final String RESPONSE_COMPARATORS = "typeconfusion.similarity.comparators";
+    static final String SIMHASH_MAX_DISTANCE = "typeconfusion.similarity.simhashDistance";
+    static final String VARIANCE_SAMPLES = "typeconfusion.variance.samples";
+    static final String PAYLOAD_PLAN_FILE = "typeconfusion.payloads.file";
+    static final String SCHEMA_MAX_ENDPOINTS = "typeconfusion.schema.maxEndpoints";
+    static final String RESPONSE_CACHE_MAX_ENTRIES = "typeconfusion.dedup.maxEntries";
+    static final String RESPONSE_CACHE_MAX_MEGABYTES = "typeconfusion.dedup.maxMegabytes";
+    static final String RESPONSE_CACHE_TTL_SECONDS = "typeconfusion.dedup.cacheSeconds";
+    static final String EVIDENCE_TEMP_FILE_BYTES = "typeconfusion.evidence.tempFileBytes";
+    static final String AGGREGATE_ISSUES_PER_ENDPOINT = "typeconfusion.issues.perEndpoint";
+    static final String INCREMENTAL_STATE_FILE = "typeconfusion.incremental.stateFile";
+    static final String BUDGET_MAX_REQUESTS = "typeconfusion.budget.maxRequests";
+    static final String BUDGET_MAX_REQUESTS_PER_HOST = "typeconfusion.budget.maxRequestsPerHost";
+    static final String LOG_LEVEL = "typeconfusion.log.level";
+    static final String LOG_SAMPLE_EVERY = "typeconfusion.log.sampleEvery";
+
+    private final MontoyaApi api;
+
+    ScanConfig(MontoyaApi api)
+    {
+        this.api = api;
+    }
+
+    int maxConcurrentProbesPerHost() {
+        return Math.max(1, integer(MAX_CONCURRENT_PROBES_PER_HOST, 8));
+    }
+
+    int maxConcurrentProbes() {
+        return Math.max(1, integer(MAX_CONCURRENT_PROBES, 16));
+    }
+
+    int throttleMaxRetries() {
+        return Math.max(0, integer(THROTTLE_MAX_RETRIES, 2));
+    }
+
+    long throttleMaxPauseMillis() {
+        return Math.max(0, integer(THROTTLE_MAX_PAUSE_SECONDS, 60)) * 1000L;
+    }
+
+    boolean groupTestingEnabled() {
+        return bool(GROUP_TESTING_ENABLED, false);
+    }
+
+    int groupTestingMinParameters() {
+        return Math.max(2, integer(GROUP_TESTING_MIN_PARAMETERS, 4));
+    }
+
+    int groupTestingMaxGroupSize() {
+        return Math.max(2, integer(GROUP_TESTING_MAX_GROUP_SIZE, 16));
+    }
+
+    long groupTestingLingerMillis() {
+        return Math.max(0, integer(GROUP_TESTING_LINGER_MILLIS, 200));
+    }
+
+    List<String> responseComparators() {
+        return Arrays.stream(string(RESPONSE_COMPARATORS, "length").split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .toList();
+    }
+
+    int simHashMaxDistance() {
+        return Math.max(0, integer(SIMHASH_MAX_DISTANCE, 10));
+    }
+
+    int varianceSamples() {
+        return Math.max(0, integer(VARIANCE_SAMPLES, 2));
+    }
+
+    /**
+     * @return file with extra probe definitions, or {@code null} when only the built-in plan is used
+     */
+    Path payloadPlanFile() {
+        var file = string(PAYLOAD_PLAN_FILE, "");
+        return file.isBlank() ? null : Path.of(file.trim());
+    }
+
+    int schemaMaxEndpoints() {
+        return Math.max(0, integer(SCHEMA_MAX_ENDPOINTS, 10000));
+    }
+
+    int responseCacheMaxEntries() {
+        return Math.max(0, integer(RESPONSE_CACHE_MAX_ENTRIES, 2048));
+    }
+
+    long responseCacheMaxBytes() {
+        return Math.max(0, integer(RESPONSE_CACHE_MAX_MEGABYTES, 16)) * 1024L * 1024L;
+    }
+
+    long responseCacheTtlMillis() {
+        return Math.max(0, integer(RESPONSE_CACHE_TTL_SECONDS, 30)) * 1000L;
+    }
+
+    int evidenceTempFileBytes() {
+        return Math.max(0, integer(EVIDENCE_TEMP_FILE_BYTES, 16384));
+    }
+
+    boolean aggregateIssuesPerEndpoint() {
+        return bool(AGGREGATE_ISSUES_PER_ENDPOINT, false);
+    }
+
+    int budgetMaxRequests() {
+        return Math.max(0, integer(BUDGET_MAX_REQUESTS, 0));
+    }
+
+    int budgetMaxRequestsPerHost() {
+        return Math.max(0, integer(BUDGET_MAX_REQUESTS_PER_HOST, 0));
+    }
+
+    ScanLog.Level logLevel() {
+        var value = string(LOG_LEVEL, "INFO").trim();
+        try {
+            return ScanLog.Level.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            api.logging().logToError("Ignoring invalid value '" + value + "' for " + LOG_LEVEL);
+            return ScanLog.Level.INFO;
+        }
+    }
+
+    int logSampleEvery() {
+        return Math.max(1, integer(LOG_SAMPLE_EVERY, 1));
+    }
+
+    /**
+     * @return file keeping the outcome of every tested parameter between scans, or {@code null} when every scan tests everything
+     */
+    Path incrementalStateFile() {
+        var file = string(INCREMENTAL_STATE_FILE, "");
+        return file.isBlank() ? null : Path.of(file.trim());
+    }
+
+    private String string(String key, String defaultValue) {
+        var property = System.getProperty(key);
+        if (property != null)
+            return property;
+
+        var value = api.persistence().preferences().getString(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private boolean bool(String key, boolean defaultValue) {
+        var property = System.getProperty(key);
+        if (property != null)
+            return Boolean.parseBoolean(property.trim());
+
+        var value = api.persistence().preferences().getBoolean(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private int integer(String key, int defaultValue) {
+        var property = System.getProperty(key);
+        if (property != null) {
+            try {
+                return Integer.parseInt(property.trim());
+            } catch (NumberFormatException ex) {
+                api.logging().logToError("Ignoring invalid value '" + property + "' for " + key);
+            }
+        }
+
+        var value = api.persistence().preferences().getInteger(key);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,216 @@
+import burp.api.montoya.logging.Logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log of the check that keeps Burp's output off the audit threads. Scan threads publish entries into a bounded
+ * lock-free ring buffer and never wait: an entry that finds the buffer full is dropped and counted. One daemon
+ * thread drains the buffer and writes the entries to Burp's output and error streams in batches.
+ *
+ * Messages are templates with {@code {}} placeholders and up to three arguments, formatted on the draining thread,
+ * so a message below the level or left out by sampling costs no allocation on the scan thread. Sampling keeps one
+ * in {@code sampleEvery} of the {@code DEBUG} and {@code INFO} messages; warnings and errors are always kept.
+ */
+class ScanLog {
+
+    enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final int CAPACITY = 4096;
+    private static final int MAX_BATCH = 512;
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * An entry of the ring buffer. {@code sequence} equals the position a producer may claim the slot for, and
+     * one more than that once the entry is published to the consumer.
+     */
+    private static final class Slot {
+        private volatile long sequence;
+        private Level level;
+        private String template;
+        private Object first, second, third;
+        private Throwable thrown;
+    }
+
+    private final Logging logging;
+    private final Level level;
+    private final int sampleEvery;
+
+    private final Slot[] slots = new Slot[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private long droppedReported;
+
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    /**
+     * @param level       messages below this level are discarded
+     * @param sampleEvery keeps one in this many {@code DEBUG} and {@code INFO} messages
+     */
+    ScanLog(Logging logging, Level level, int sampleEvery)
+    {
+        this.logging = logging;
+        this.level = level;
+        this.sampleEvery = Math.max(1, sampleEvery);
+
+        for (int i = 0; i < CAPACITY; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+
+        this.drainer = new Thread(this::drainLoop, "TypeConfusion-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    boolean enabled(Level level) {
+        return level.compareTo(this.level) >= 0;
+    }
+
+    void log(Level level, String template) {
+        publish(level, template, null, null, null, null);
+    }
+
+    void log(Level level, String template, Object first) {
+        publish(level, template, first, null, null, null);
+    }
+
+    void log(Level level, String template, Object first, Object second) {
+        publish(level, template, first, second, null, null);
+    }
+
+    void log(Level level, String template, Object first, Object second, Object third) {
+        publish(level, template, first, second, third, null);
+    }
+
+    void error(String template, Object first, Throwable thrown) {
+        publish(Level.ERROR, template, first, null, null, thrown);
+    }
+
+    void error(String template, Object first, Object second, Throwable thrown) {
+        publish(Level.ERROR, template, first, second, null, thrown);
+    }
+
+    private void publish(Level level, String template, Object first, Object second, Object third, Throwable thrown) {
+        if (!enabled(level))
+            return;
+        if (sampleEvery > 1 && level.compareTo(Level.WARN) < 0 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0)
+            return;
+
+        Slot slot;
+        long position;
+        while (true) {
+            position = tail.get();
+            slot = slots[(int) (position & (CAPACITY - 1))];
+            var difference = slot.sequence - position;
+            if (difference == 0 && tail.compareAndSet(position, position + 1))
+                break;
+            if (difference < 0) {
+                dropped.increment();
+                return;
+            }
+        }
+
+        slot.level = level;
+        slot.template = template;
+        slot.first = first;
+        slot.second = second;
+        slot.third = third;
+        slot.thrown = thrown;
+        slot.sequence = position + 1;
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drain() == 0)
+                LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+        }
+    }
+
+    /**
+     * Writes up to one batch of published entries. Only one thread drains at a time, the draining thread or {@link #close}.
+     *
+     * @return the number of entries written
+     */
+    private synchronized int drain() {
+        var output = new StringBuilder();
+        var errors = new StringBuilder();
+        var count = 0;
+
+        while (count < MAX_BATCH) {
+            var slot = slots[(int) (head & (CAPACITY - 1))];
+            if (slot.sequence != head + 1)
+                break;
+
+            var target = slot.level.compareTo(Level.WARN) >= 0 ? errors : output;
+            if (!target.isEmpty())
+                target.append('\n');
+            format(target, slot);
+
+            slot.template = null;
+            slot.first = slot.second = slot.third = null;
+            slot.thrown = null;
+            slot.sequence = head + CAPACITY;
+            head++;
+            count++;
+        }
+
+        var droppedNow = dropped.sum();
+        if (droppedNow > droppedReported) {
+            if (!errors.isEmpty())
+                errors.append('\n');
+            errors.append("WARN  ").append(droppedNow - droppedReported).append(" log messages dropped, the log buffer was full");
+            droppedReported = droppedNow;
+        }
+
+        if (!output.isEmpty())
+            logging.logToOutput(output.toString());
+        if (!errors.isEmpty())
+            logging.logToError(errors.toString());
+
+        return count;
+    }
+
+    private static void format(StringBuilder target, Slot slot) {
+        target.append(String.format("%-5s ", slot.level));
+
+        var template = slot.template;
+        var argument = 0;
+        var from = 0;
+        for (int at = template.indexOf("{}"); at >= 0 && argument < 3; at = template.indexOf("{}", from)) {
+            target.append(template, from, at).append(argument == 0 ? slot.first : argument == 1 ? slot.second : slot.third);
+            argument++;
+            from = at + 2;
+        }
+        target.append(template, from, template.length());
+
+        if (slot.thrown != null) {
+            var trace = new StringWriter();
+            slot.thrown.printStackTrace(new PrintWriter(trace));
+            target.append('\n').append(trace.toString().stripTrailing());
+        }
+    }
+
+    /**
+     * Stops the draining thread after writing what is left in the buffer.
+     */
+    void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        while (drain() > 0) { }
+    }
+}
@@ -0,0 +1,198 @@
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms for the scan's hot paths. Recording is a map lookup plus a {@link LongAdder}
+ * increment, so the metrics stay on for every scan. Names derived from phases, verdicts and insertion point
+ * types are built once, so recording does not allocate.
+ *
+ * Requests are attributed to the {@link Phase} that sent them and to the insertion point being audited on
+ * the calling thread, see {@link #beginInsertionPoint()}.
+ */
+class ScanMetrics {
+
+    enum Phase {
+        FUZZY_GATE("fuzzyGate"),
+        REMOVAL_GATE("removalGate"),
+        VARIANCE("variance"),
+        PAYLOAD_PLAN("payloadPlan"),
+        GROUP_TEST("groupTest");
+
+        private final String label;
+        private final String requestsCounter;
+        private final String latencyHistogram;
+
+        Phase(String label) {
+            this.label = label;
+            this.requestsCounter = "requests." + label;
+            this.latencyHistogram = "latency." + label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * One exported metric. Counters only fill {@code count}; histogram values are in {@code unit}.
+     */
+    record Row(String name, String kind, String unit, long count, long total, long mean, long p50, long p95, long p99, long max) {
+    }
+
+    private static final Map<GateVerdictCache.Verdict, String> GATE_COUNTERS = new EnumMap<>(GateVerdictCache.Verdict.class);
+    private static final Map<AuditInsertionPointType, String> INSERTION_POINT_COUNTERS = new EnumMap<>(AuditInsertionPointType.class);
+    private static final Map<AuditInsertionPointType, String> INSERTION_POINT_HISTOGRAMS = new EnumMap<>(AuditInsertionPointType.class);
+
+    static {
+        for (var verdict : GateVerdictCache.Verdict.values())
+            GATE_COUNTERS.put(verdict, "gate." + verdict.name().toLowerCase());
+        for (var type : AuditInsertionPointType.values()) {
+            INSERTION_POINT_COUNTERS.put(type, "insertionPoints." + type.name());
+            INSERTION_POINT_HISTOGRAMS.put(type, "requestsPerInsertionPoint." + type.name());
+        }
+    }
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ThreadLocal<long[]> insertionPointRequests = new ThreadLocal<>();
+
+    void increment(String counter) {
+        add(counter, 1);
+    }
+
+    void add(String counter, long delta) {
+        counters.computeIfAbsent(counter, key -> new LongAdder()).add(delta);
+    }
+
+    void record(String histogram, String unit, long value) {
+        histograms.computeIfAbsent(histogram, key -> new Histogram(unit)).record(value);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} in microseconds.
+     */
+    void recordSince(String histogram, long startNanos) {
+        record(histogram, "us", (System.nanoTime() - startNanos) / 1000);
+    }
+
+    void requestsSent(Phase phase, int count) {
+        add(phase.requestsCounter, count);
+
+        var tally = insertionPointRequests.get();
+        if (tally != null)
+            tally[0] += count;
+    }
+
+    void probeLatency(Phase phase, long latencyNanos) {
+        record(phase.latencyHistogram, "us", latencyNanos / 1000);
+    }
+
+    void gateVerdict(GateVerdictCache.Verdict verdict) {
+        increment(GATE_COUNTERS.get(verdict));
+    }
+
+    /**
+     * Starts counting the requests the current thread sends for one insertion point.
+     */
+    void beginInsertionPoint() {
+        insertionPointRequests.set(new long[1]);
+    }
+
+    void endInsertionPoint(AuditInsertionPointType type) {
+        var tally = insertionPointRequests.get();
+        insertionPointRequests.remove();
+        if (tally == null)
+            return;
+
+        increment(INSERTION_POINT_COUNTERS.get(type));
+        record("requestsPerInsertionPoint", "requests", tally[0]);
+        record(INSERTION_POINT_HISTOGRAMS.get(type), "requests", tally[0]);
+    }
+
+    void reset() {
+        counters.clear();
+        histograms.clear();
+    }
+
+    List<Row> snapshot() {
+        var rows = new ArrayList<Row>();
+        new TreeMap<>(counters).forEach((name, counter) -> rows.add(new Row(name, "counter", "", counter.sum(), 0, 0, 0, 0, 0, 0)));
+        new TreeMap<>(histograms).forEach((name, histogram) -> rows.add(histogram.row(name)));
+        return rows;
+    }
+
+    String toCsv() {
+        var csv = new StringBuilder("name,kind,unit,count,total,mean,p50,p95,p99,max\r\n");
+        for (var row : snapshot()) {
+            csv.append(String.join(",", row.name(), row.kind(), row.unit(),
+                    String.valueOf(row.count()), String.valueOf(row.total()), String.valueOf(row.mean()),
+                    String.valueOf(row.p50()), String.valueOf(row.p95()), String.valueOf(row.p99()), String.valueOf(row.max())));
+            csv.append("\r\n");
+        }
+        return csv.toString();
+    }
+
+    String toJson() throws JsonProcessingException {
+        return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(Map.of("metrics", snapshot()));
+    }
+
+    /**
+     * Log-linear histogram: values are bucketed by their highest set bit, so percentiles are reported as the
+     * upper bound of their bucket, at most twice the true value.
+     */
+    private static final class Histogram {
+        private final String unit;
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private Histogram(String unit) {
+            this.unit = unit;
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        private void record(long value) {
+            value = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            total.add(value);
+            max.accumulate(value);
+        }
+
+        private Row row(String name) {
+            var counts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++)
+                counts[i] = buckets[i].sum();
+
+            var n = count.sum();
+            var sum = total.sum();
+            var maximum = max.get();
+            return new Row(name, "histogram", unit, n, sum, n == 0 ? 0 : sum / n,
+                    percentile(counts, n, 0.50, maximum), percentile(counts, n, 0.95, maximum), percentile(counts, n, 0.99, maximum), maximum);
+        }
+
+        private static long percentile(long[] counts, long n, double quantile, long maximum) {
+            var rank = (long) Math.ceil(n * quantile);
+            var seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0)
+                    return Math.min(maximum, i == 0 ? 0 : (1L << i) - 1);
+            }
+            return maximum;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.logging.Logging;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Outcome of every tested parameter, kept in a file between scans so a rescan after a deploy only retests what
+ * is new or changed. An endpoint is identified by its signature and the set of parameter names it is called
+ * with, and fingerprinted by the status and SimHash of the base response. A parameter that was tested without
+ * a finding is skipped while its endpoint keeps the same parameters and a similar response; new parameters,
+ * changed endpoints and parameters with findings are tested again, so every scan still reports its issues.
+ *
+ * The file is read in the background when the extension loads and written when it unloads.
+ */
+class ScanStateStore {
+
+    private static final int MAGIC = 0x54435353;
+    private static final int VERSION = 2;
+    private static final int MAX_STRING_BYTES = 1 << 20;
+    private static final int MAX_ENDPOINTS = 100_000;
+
+    record EndpointKey(EndpointSignature endpoint, long parameterSet) { }
+
+    private record Fingerprint(EndpointKey key, short status, long simHash) { }
+
+    private static final class EndpointState {
+        private final short status;
+        private final long simHash;
+        private final Map<String, Boolean> confirmed = new ConcurrentHashMap<>();
+
+        EndpointState(short status, long simHash)
+        {
+            this.status = status;
+            this.simHash = simHash;
+        }
+    }
+
+    private final Path file;
+    private final int maxSimHashDistance;
+    private final Logging logging;
+    private final CompletableFuture<Map<EndpointKey, EndpointState>> previous;
+    private final Map<EndpointKey, EndpointState> current = new ConcurrentHashMap<>();
+    private final ContentKeys contentKeys = new ContentKeys();
+    private final BoundedCache<String, Fingerprint> fingerprints = new BoundedCache<>(64, 10 * 60 * 1000L);
+
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+
+    private ScanStateStore(Path file, int maxSimHashDistance, Logging logging)
+    {
+        this.file = file;
+        this.maxSimHashDistance = maxSimHashDistance;
+        this.logging = logging;
+        this.previous = CompletableFuture.supplyAsync(this::read);
+    }
+
+    /**
+     * Starts reading the state of the previous scan from {@code file}. A missing or unreadable file starts an empty state.
+     *
+     * @param maxSimHashDistance differing SimHash bits of the base response up to which an endpoint is unchanged
+     */
+    static ScanStateStore load(Path file, int maxSimHashDistance, Logging logging) {
+        return new ScanStateStore(file, maxSimHashDistance, logging);
+    }
+
+    /**
+     * Whether the parameter was tested without a finding by the previous scan of an unchanged endpoint.
+     * The first call waits for the state file to be read.
+     */
+    boolean unchanged(HttpRequestResponse baseRequestResponse, AuditInsertionPointType type, String name) {
+        var fingerprint = fingerprint(baseRequestResponse);
+        if (fingerprint == null)
+            return false;
+
+        var state = previous.join().get(fingerprint.key());
+        if (state == null
+                || !similar(state, fingerprint.status(), fingerprint.simHash())
+                || !Boolean.FALSE.equals(state.confirmed.get(parameterKey(type, name))))
+            return false;
+
+        skipped.incrementAndGet();
+        record(fingerprint, type, name, false);
+        return true;
+    }
+
+    /**
+     * Records the outcome of a tested parameter. A parameter whose probes did not all get a usable response must
+     * not be recorded as unconfirmed, or later scans would skip it.
+     */
+    void record(HttpRequestResponse baseRequestResponse, AuditInsertionPointType type, String name, boolean confirmed) {
+        var fingerprint = fingerprint(baseRequestResponse);
+        if (fingerprint == null)
+            return;
+
+        recorded.incrementAndGet();
+        record(fingerprint, type, name, confirmed);
+    }
+
+    private void record(Fingerprint fingerprint, AuditInsertionPointType type, String name, boolean confirmed) {
+        current.computeIfAbsent(fingerprint.key(), ignored -> new EndpointState(fingerprint.status(), fingerprint.simHash()))
+                .confirmed.put(parameterKey(type, name), confirmed);
+    }
+
+    private boolean similar(EndpointState state, short status, long simHash) {
+        return state.status == status && Long.bitCount(state.simHash ^ simHash) <= maxSimHashDistance;
+    }
+
+    private Fingerprint fingerprint(HttpRequestResponse baseRequestResponse) {
+        if (baseRequestResponse.response() == null)
+            return null;
+
+        var key = contentKeys.of(baseRequestResponse);
+        var fingerprint = fingerprints.get(key);
+        if (fingerprint == null) {
+            var request = baseRequestResponse.request();
+            var response = baseRequestResponse.response();
+            fingerprint = new Fingerprint(
+                    new EndpointKey(EndpointSignature.of(baseRequestResponse.httpService(), request.pathWithoutQuery()), parameterSet(request)),
+                    response.statusCode(),
+                    ResponseComparators.SimHash.simHash(response.body().getBytes()));
+            fingerprints.put(key, fingerprint);
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Hash of the sorted names of the parameters the check tests, independent of their values and order.
+     */
+    private static long parameterSet(HttpRequest request) {
+        var names = new TreeSet<String>();
+        for (var parameter : request.parameters()) {
+            if (parameter.type() == HttpParameterType.URL || parameter.type() == HttpParameterType.BODY || parameter.type() == HttpParameterType.JSON)
+                names.add(parameter.type().name() + ':' + parameter.name());
+        }
+
+        var digest = Digests.sha256(String.join("\n", names).getBytes(StandardCharsets.UTF_8));
+        return Long.parseUnsignedLong(digest.substring(0, 16), 16);
+    }
+
+    private static String parameterKey(AuditInsertionPointType type, String name) {
+        return type.name() + ':' + name;
+    }
+
+    /**
+     * Writes the endpoints tested in this scan, and those of the previous scan it did not reach, to the state file.
+     * Parameters of an endpoint whose response is unchanged are merged with those of the previous scan.
+     */
+    void save() throws IOException {
+        var merged = new LinkedHashMap<EndpointKey, EndpointState>(current);
+        for (var entry : previous.join().entrySet()) {
+            var state = merged.get(entry.getKey());
+            if (state == null) {
+                merged.put(entry.getKey(), entry.getValue());
+            } else if (similar(entry.getValue(), state.status, state.simHash)) {
+                entry.getValue().confirmed.forEach(state.confirmed::putIfAbsent);
+            }
+        }
+
+        // strings the reader would reject are left out rather than failing the whole save
+        var endpointCount = merged.size();
+        merged.keySet().removeIf(key -> !fits(key.endpoint().host()) || !fits(key.endpoint().path()));
+        var oversized = endpointCount - merged.size();
+
+        var directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        var temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (var output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(Math.min(merged.size(), MAX_ENDPOINTS));
+
+            var written = 0;
+            for (var entry : merged.entrySet()) {
+                if (written++ == MAX_ENDPOINTS)
+                    break;
+
+                var endpoint = entry.getKey().endpoint();
+                var state = entry.getValue();
+                writeString(output, endpoint.host());
+                output.writeInt(endpoint.port());
+                output.writeBoolean(endpoint.secure());
+                writeString(output, endpoint.path());
+                output.writeLong(entry.getKey().parameterSet());
+                output.writeShort(state.status);
+                output.writeLong(state.simHash);
+
+                var parameters = new ArrayList<Map.Entry<String, Boolean>>(state.confirmed.size());
+                for (var parameter : state.confirmed.entrySet()) {
+                    if (fits(parameter.getKey()))
+                        parameters.add(parameter);
+                    else
+                        oversized++;
+                }
+                output.writeInt(parameters.size());
+                for (var parameter : parameters) {
+                    writeString(output, parameter.getKey());
+                    output.writeBoolean(parameter.getValue());
+                }
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(temporary);
+            throw ex;
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        if (oversized > 0)
+            logging.logToOutput("Scan state: left out " + oversized + " endpoint paths or parameter names longer than " + MAX_STRING_BYTES + " bytes");
+    }
+
+    private Map<EndpointKey, EndpointState> read() {
+        try (var input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION)
+                throw new IOException("not a scan state file of this version");
+
+            var endpoints = input.readInt();
+            var states = new HashMap<EndpointKey, EndpointState>(endpoints * 2);
+            for (int i = 0; i < endpoints; i++) {
+                var endpoint = new EndpointSignature(readString(input), input.readInt(), input.readBoolean(), readString(input));
+                var key = new EndpointKey(endpoint, input.readLong());
+                var state = new EndpointState(input.readShort(), input.readLong());
+
+                var parameters = input.readInt();
+                for (int j = 0; j < parameters; j++)
+                    state.confirmed.put(readString(input), input.readBoolean());
+                states.put(key, state);
+            }
+
+            return states;
+        } catch (NoSuchFileException ex) {
+            return Map.of();
+        } catch (IOException ex) {
+            logging.logToError("Could not read scan state " + file + ", every parameter is tested: " + ex.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * Writes the string as length-prefixed UTF-8; unlike {@link DataOutputStream#writeUTF} it has no 64 KB limit,
+     * so a long path or parameter name cannot fail the whole save.
+     */
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static boolean fits(String value) {
+        return value.length() <= MAX_STRING_BYTES / 3 || value.getBytes(StandardCharsets.UTF_8).length <= MAX_STRING_BYTES;
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        var length = input.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES)
+            throw new IOException("invalid string length " + length);
+
+        var bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    String statistics() {
+        var endpoints = previous.isDone() ? previous.join().size() : 0;
+        return "Scan state: " + endpoints + " endpoints from the previous scan, " + skipped.get() + " unchanged parameters skipped, "
+                + recorded.get() + " parameters tested";
+    }
+}
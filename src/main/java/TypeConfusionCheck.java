@@ -5,7 +5,6 @@ import burp.api.montoya.http.message.HttpRequestResponse;
 import burp.api.montoya.http.message.params.HttpParameterType;
 import burp.api.montoya.http.message.requests.HttpRequest;
 import static burp.api.montoya.scanner.AuditResult.auditResult;
-import static burp.api.montoya.scanner.audit.issues.AuditIssue.auditIssue;
 
 import burp.api.montoya.scanner.AuditResult;
 import burp.api.montoya.scanner.ConsolidationAction;
@@ -14,448 +13,547 @@ import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPoint;
 import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
 import burp.api.montoya.scanner.audit.issues.AuditIssue;
 import burp.api.montoya.http.message.ContentType;
-import burp.api.montoya.scanner.audit.issues.AuditIssueConfidence;
-import burp.api.montoya.scanner.audit.issues.AuditIssueSeverity;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TypeConfusionCheck implements ScanCheck {
 
+    private static final Set<AuditInsertionPointType> INSERTION_POINT_BLACKLIST = EnumSet.of(
+            AuditInsertionPointType.ENTIRE_BODY,
+            AuditInsertionPointType.EXTENSION_PROVIDED,
+            AuditInsertionPointType.HEADER,
+            AuditInsertionPointType.PARAM_AMF,
+            AuditInsertionPointType.PARAM_COOKIE,
+            AuditInsertionPointType.PARAM_MULTIPART_ATTR,
+            AuditInsertionPointType.PARAM_XML,
+            AuditInsertionPointType.PARAM_XML_ATTR,
+            AuditInsertionPointType.UNKNOWN,
+            AuditInsertionPointType.URL_PATH_FILENAME,
+            AuditInsertionPointType.URL_PATH_FOLDER,
+            AuditInsertionPointType.USER_PROVIDED,
+            AuditInsertionPointType.PARAM_NAME_URL,
+            AuditInsertionPointType.PARAM_NAME_BODY);
+
     private final MontoyaApi api;
+    private final ScanLog log;
+    private final AuditResult noIssues = auditResult(List.of());
     private final String _fuzzyPayload = "s:dfh@%^124g2376#@<<";
-
-    TypeConfusionCheck(MontoyaApi api)
+    private final GateVerdictCache gateVerdictCache = new GateVerdictCache();
+    private final EvidenceStore evidenceStore;
+    private final IssueIndex issueIndex;
+    private final ContentKeys contentKeys = new ContentKeys();
+    private final BoundedCache<String, JsonBodyIndex> jsonBodyIndexes = new BoundedCache<>(64, 10 * 60 * 1000L);
+    private final ProbeDispatcher probeDispatcher;
+    private final GroupTester groupTester;
+    private final ResponseSimilarity responseSimilarity;
+    private final VarianceProfiles varianceProfiles;
+    private final PayloadPlan payloadPlan;
+    private final ParameterSchemaIndex schemaIndex;
+    private final BoundedCache<String, Boolean> observedRequests = new BoundedCache<>(64, 10 * 60 * 1000L);
+    private final ScanStateStore scanState;
+    private final RequestBudget requestBudget;
+    private final ScanMetrics metrics = new ScanMetrics();
+
+    /**
+     * @param scanState outcomes of the previous scan used to skip unchanged parameters, {@code null} tests every parameter
+     */
+    TypeConfusionCheck(MontoyaApi api, ScanStateStore scanState)
     {
         this.api = api;
+        this.scanState = scanState;
+
+        var config = new ScanConfig(api);
+        this.log = new ScanLog(api.logging(), config.logLevel(), config.logSampleEvery());
+        var comparators = new ArrayList<ResponseComparator<?>>();
+        for (var name : config.responseComparators()) {
+            try {
+                comparators.add(ResponseComparators.byName(name, config.simHashMaxDistance()));
+            } catch (IllegalArgumentException ex) {
+                log.log(ScanLog.Level.WARN, "{}", ex.getMessage());
+            }
+        }
+        this.responseSimilarity = new ResponseSimilarity(comparators.isEmpty() ? List.of(new ResponseComparators.Length(40)) : comparators, contentKeys);
+        var rateController = new AdaptiveRateController(config.maxConcurrentProbesPerHost(), config.maxConcurrentProbes(), config.throttleMaxPauseMillis());
+        var responseCache = config.responseCacheMaxEntries() > 0
+                ? new ProbeResponseCache(config.responseCacheMaxEntries(), config.responseCacheMaxBytes(), config.responseCacheTtlMillis())
+                : null;
+        this.requestBudget = config.budgetMaxRequests() > 0 || config.budgetMaxRequestsPerHost() > 0
+                ? new RequestBudget(config.budgetMaxRequests(), config.budgetMaxRequestsPerHost())
+                : null;
+        this.probeDispatcher = new ProbeDispatcher(api, rateController, config.throttleMaxRetries(), responseCache, requestBudget, metrics);
+        this.varianceProfiles = new VarianceProfiles(probeDispatcher, config.varianceSamples());
+        this.evidenceStore = new EvidenceStore(config.evidenceTempFileBytes(), metrics);
+        this.issueIndex = new IssueIndex(config.aggregateIssuesPerEndpoint());
+        this.payloadPlan = loadPayloadPlan(config);
+        this.schemaIndex = config.schemaMaxEndpoints() > 0 ? new ParameterSchemaIndex(config.schemaMaxEndpoints()) : null;
+        this.groupTester = config.groupTestingEnabled()
+                ? new GroupTester(api, contentKeys, probeDispatcher, gateVerdictCache, evidenceStore, this::detectChange, _fuzzyPayload,
+                        config.groupTestingMinParameters(), config.groupTestingMaxGroupSize(), config.groupTestingLingerMillis())
+                : null;
+    }
+
+    private PayloadPlan loadPayloadPlan(ScanConfig config) {
+        PayloadPlan plan;
+        try {
+            plan = PayloadPlan.builtIn();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        var file = config.payloadPlanFile();
+        if (file != null) {
+            try {
+                plan = plan.withDefinitionsFrom(file);
+            } catch (IOException | IllegalArgumentException ex) {
+                log.log(ScanLog.Level.WARN, "Could not load payload plan {}: {}", file, ex.getMessage());
+            }
+        }
+
+        return plan;
+    }
+
+    GateVerdictCache gateVerdictCache() {
+        return gateVerdictCache;
+    }
+
+    ScanMetrics metrics() {
+        return metrics;
+    }
+
+    AdaptiveRateController rateController() {
+        return probeDispatcher.rateController();
+    }
+
+    /**
+     * @return the cache shared by identical probes, or {@code null} when it is disabled
+     */
+    ProbeResponseCache responseCache() {
+        return probeDispatcher.responseCache();
+    }
+
+    /**
+     * @return the request budget of the scan, or {@code null} when the scan has none
+     */
+    RequestBudget requestBudget() {
+        return requestBudget;
+    }
+
+    void shutdown() {
+        probeDispatcher.shutdown();
+        log.close();
     }
 
     @Override
     public AuditResult activeAudit(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint) {
+        var insertionPointType = auditInsertionPoint.type();
+        if (INSERTION_POINT_BLACKLIST.contains(insertionPointType)) {
+            metrics.increment("insertionPoints.skipped");
+            return noIssues;
+        }
+
+        var insertionPointName = auditInsertionPoint.name();
         try
         {
-            var url = baseRequestResponse.request().url();
-            var insertionPointType = auditInsertionPoint.type();
-            var insertionPointName = auditInsertionPoint.name();
-
-            List<AuditInsertionPointType> insertionPointBlackList = new ArrayList<AuditInsertionPointType>()
-            {
-                {
-                    add(AuditInsertionPointType.ENTIRE_BODY);
-                    add(AuditInsertionPointType.EXTENSION_PROVIDED);
-                    add(AuditInsertionPointType.HEADER);
-                    add(AuditInsertionPointType.PARAM_AMF);
-                    add(AuditInsertionPointType.PARAM_COOKIE);
-                    add(AuditInsertionPointType.PARAM_MULTIPART_ATTR);
-                    add(AuditInsertionPointType.PARAM_XML);
-                    add(AuditInsertionPointType.PARAM_XML_ATTR);
-                    add(AuditInsertionPointType.UNKNOWN);
-                    add(AuditInsertionPointType.URL_PATH_FILENAME);
-                    add(AuditInsertionPointType.URL_PATH_FOLDER);
-                    add(AuditInsertionPointType.USER_PROVIDED);
-                    add(AuditInsertionPointType.PARAM_NAME_URL);
-                    add(AuditInsertionPointType.PARAM_NAME_BODY);
-                }
-            };
-            if (insertionPointBlackList.contains(insertionPointType))
-                return auditResult(new ArrayList<AuditIssue>());
-
-            api.logging().logToOutput("Scanning '" + insertionPointName + "' of type " + insertionPointType.name() + " on url " + url);
-
-            if (insertionPointType == AuditInsertionPointType.PARAM_URL)
-                return testQueryStringInsertionPoint(baseRequestResponse, auditInsertionPoint);
-            else
-                return testBodyInsertionPoint(baseRequestResponse, auditInsertionPoint);
+            if (scanState != null && scanState.unchanged(baseRequestResponse, insertionPointType, insertionPointName)) {
+                metrics.increment("insertionPoints.unchanged");
+                return noIssues;
+            }
+
+            if (requestBudget != null && !requestBudget.admit(baseRequestResponse, insertionPointType, insertionPointName)) {
+                metrics.increment("insertionPoints.overBudget");
+                return noIssues;
+            }
+
+            if (log.enabled(ScanLog.Level.INFO))
+                log.log(ScanLog.Level.INFO, "Scanning '{}' of type {} on url {}", insertionPointName, insertionPointType, baseRequestResponse.request().url());
+
+            metrics.beginInsertionPoint();
+            var start = System.nanoTime();
+            try {
+                observeSchema(baseRequestResponse);
+
+                Tested tested;
+                var parameterKey = groupTester != null ? parameterKey(baseRequestResponse, auditInsertionPoint) : null;
+                var groupResult = groupTester != null
+                        ? groupTester.test(baseRequestResponse, insertionPointType, parameterKey, () -> jsonBodyIndex(baseRequestResponse))
+                        : null;
+                if (groupResult != null && groupResult.covers(insertionPointType, parameterKey))
+                    tested = reportGroupFinding(baseRequestResponse, auditInsertionPoint, groupResult.finding(insertionPointType, parameterKey));
+                else if (insertionPointType == AuditInsertionPointType.PARAM_URL)
+                    tested = testQueryStringInsertionPoint(baseRequestResponse, auditInsertionPoint);
+                else
+                    tested = testBodyInsertionPoint(baseRequestResponse, auditInsertionPoint);
+
+                var found = !tested.issues().isEmpty();
+                if (!tested.complete())
+                    metrics.increment("insertionPoints.incomplete");
+                // a parameter is only known to be clean when every probe got a response to judge
+                if (scanState != null && (found || tested.complete()))
+                    scanState.record(baseRequestResponse, insertionPointType, insertionPointName, found);
+                if (requestBudget != null)
+                    requestBudget.record(insertionPointName, found);
+                return auditResult(tested.issues());
+            } finally {
+                metrics.recordSince("time.insertionPoint", start);
+                metrics.endInsertionPoint(insertionPointType);
+            }
         } catch (Exception ex) {
-            api.logging().logToOutput(ex.getMessage());
-            return auditResult(new ArrayList<AuditIssue>());
+            metrics.increment("errors");
+            log.error("Audit of '{}' on url {} failed", insertionPointName, baseRequestResponse.request().url(), ex);
+            return noIssues;
         }
     }
 
     @Override
     public AuditResult passiveAudit(HttpRequestResponse baseRequestResponse) {
-        return auditResult(new ArrayList<AuditIssue>());
+        try {
+            observeSchema(baseRequestResponse);
+        } catch (Exception ex) {
+            log.error("Schema observation of {} failed", baseRequestResponse.request().url(), ex);
+        }
+        return noIssues;
+    }
+
+    /**
+     * Adds the base request to the schema index once, not once per insertion point. Observing is idempotent,
+     * so concurrent audits of the same base request racing past the check cost only duplicate work.
+     */
+    private void observeSchema(HttpRequestResponse baseRequestResponse) {
+        if (schemaIndex == null)
+            return;
+
+        var key = contentKeys.of(baseRequestResponse);
+        if (observedRequests.get(key) != null)
+            return;
+        observedRequests.put(key, Boolean.TRUE);
+
+        var start = System.nanoTime();
+        schemaIndex.observe(baseRequestResponse.request(), () -> jsonBodyIndex(baseRequestResponse));
+        metrics.recordSince("time.schemaObservation", start);
     }
 
     @Override
     public ConsolidationAction consolidateIssues(AuditIssue newIssue, AuditIssue existingIssue) {
-        if (existingIssue.detail().equals(newIssue.detail()))
-            return ConsolidationAction.KEEP_EXISTING;
-
-        return ConsolidationAction.KEEP_BOTH;
+        return issueIndex.consolidate(newIssue, existingIssue);
     }
 
-    private AuditResult testQueryStringInsertionPoint(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint) {
+    /**
+     * Issues found for an insertion point.
+     *
+     * @param complete whether every probe sent for the insertion point got a usable response, so that no issues
+     *                 means the parameter is not confused rather than that it could not be tested
+     */
+    private record Tested(List<AuditIssue> issues, boolean complete) { }
+
+    /**
+     * Group results only cover parameters whose verdicts rest on responses that did not change, so they are complete.
+     */
+    private Tested reportGroupFinding(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint, Optional<GroupTester.Finding> groupFinding) {
         var auditIssues = new ArrayList<AuditIssue>();
-        var insertionPointName = auditInsertionPoint.name();
-
-        var baseRequest =  baseRequestResponse.request();
-        var url = baseRequest.url();
-        var baseRequestQuery = baseRequest.query();
-        var baseValue = auditInsertionPoint.baseValue();
 
-        // false positive check #1: test if putting garbage in the param changes the response
-        var checkRequest = auditInsertionPoint.buildHttpRequestWithPayload(ByteArray.byteArray(_fuzzyPayload));
-
-        checkRequest = checkRequest.withService(baseRequestResponse.httpService());
-
-        var checkRequestResponse = api.http().sendRequest(checkRequest);
-
-        if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-            return auditResult(auditIssues);
-        }
-
-        // false positive check #2: test if removing the param changes the response
-        var param = baseRequest.parameter(insertionPointName, HttpParameterType.URL);
-        checkRequest = baseRequest.withRemovedParameters(param);
-
-        checkRequest = checkRequest.withService(baseRequestResponse.httpService());
-
-        checkRequestResponse = api.http().sendRequest(checkRequest);
+        groupFinding.ifPresent(finding -> auditIssues.add(confusionIssue(
+                baseRequestResponse,
+                auditInsertionPoint,
+                finding.family(),
+                finding.issueName(),
+                finding.description(),
+                finding.payload(),
+                finding.groupSize() > 1 ? " It was mutated together with " + (finding.groupSize() - 1) + " other parameters." : "",
+                finding.evidence()
+        )));
+
+        return new Tested(auditIssues, true);
+    }
 
-        if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-            return auditResult(auditIssues);
-        }
-        
-        var payload = String.format("%s[]=%s&%s[]=%s1", insertionPointName, api.utilities().urlUtils().encode(baseValue), insertionPointName, api.utilities().urlUtils().encode(baseValue));
-        var modifiedQuery = baseRequestQuery
-                .replaceFirst(insertionPointName+"=[^&#$]*", payload);
-
-        checkRequest = HttpRequest.httpRequest(baseRequest.toString().replaceFirst(baseRequest.method() + " .+ HTTP\\/", baseRequest.method() + " "+baseRequest.pathWithoutQuery()+"?"+modifiedQuery + " HTTP/"))
-                .withService(baseRequestResponse.httpService());
-
-        checkRequestResponse = api.http().sendRequest(checkRequest);
-
-        if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-            var requestHighlights = auditInsertionPoint.issueHighlights(ByteArray.byteArray(payload));
-            var highlights = new ArrayList<Marker>();
-            var offset = insertionPointName.length() + 1;
-            var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive() - offset, requestHighlights.get(0).endIndexExclusive() - offset);
-            highlights.add(marker);
-
-            auditIssues.add(auditIssue(
-                    "Array confusion found in urlencoded query parameter",
-                    "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as an array <b>" + payload + "</b> and the response was the same.",
-                    null,
-                    url,
-                    AuditIssueSeverity.INFORMATION,
-                    AuditIssueConfidence.FIRM,
-                    null,
-                    null,
-                    AuditIssueSeverity.INFORMATION,
-                    checkRequestResponse.withRequestMarkers(highlights)
-            ));
-        }
-        
-        payload = String.format("%s[0]=%s&%s[1]=%s1", insertionPointName, api.utilities().urlUtils().encode(baseValue), insertionPointName, api.utilities().urlUtils().encode(baseValue));
-        modifiedQuery = baseRequestQuery
-                .replaceFirst(insertionPointName+"=[^&#$]*", payload);
-
-        checkRequest = HttpRequest.httpRequest(baseRequest.toString().replaceFirst(baseRequest.method() + " .+ HTTP\\/", baseRequest.method() + " "+baseRequest.pathWithoutQuery()+"?"+modifiedQuery + " HTTP/"))
-                .withService(baseRequestResponse.httpService());
-
-        checkRequestResponse = api.http().sendRequest(checkRequest);
-
-        if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-            var requestHighlights = auditInsertionPoint.issueHighlights(ByteArray.byteArray(payload));
-            var highlights = new ArrayList<Marker>();
-            var offset = insertionPointName.length() + 1;
-            var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive() - offset, requestHighlights.get(0).endIndexExclusive() - offset);
-            highlights.add(marker);
-
-            auditIssues.add(auditIssue(
-                    "Array confusion found in urlencoded query parameter",
-                    "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as an array <b>" + payload + "</b> and the response was the same.",
-                    null,
-                    url,
-                    AuditIssueSeverity.INFORMATION,
-                    AuditIssueConfidence.FIRM,
-                    null,
-                    null,
-                    AuditIssueSeverity.INFORMATION,
-                    checkRequestResponse.withRequestMarkers(highlights)
-            ));
+    private Tested testQueryStringInsertionPoint(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint) {
+        var verdict = falsePositiveGates(baseRequestResponse, auditInsertionPoint, HttpParameterType.URL, null);
+        if (verdict != GateVerdictCache.Verdict.LIVE) {
+            return new Tested(List.of(), verdict != null);
         }
 
-        return auditResult(auditIssues);
+        return runPayloadPlan(baseRequestResponse, auditInsertionPoint, ProbeDefinition.Location.QUERY, null);
     }
 
-    private AuditResult testBodyInsertionPoint(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint) throws IOException {
-        var auditIssues = new ArrayList<AuditIssue>();
+    private Tested testBodyInsertionPoint(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint) throws IOException {
         var insertionPointName = auditInsertionPoint.name();
 
         var baseRequest =  baseRequestResponse.request();
-        var url = baseRequest.url();
-        var baseRequestBody = baseRequest.body();
-
         var baseValue = auditInsertionPoint.baseValue();
 
         if (baseRequest.contentType() == ContentType.JSON) {
             // make sure that json param is in the body
-            if (!baseRequestBody.toString().contains("\""+insertionPointName+"\""))
-                return auditResult(auditIssues);
-
-            HttpRequest checkRequest = null;
-
-            // check that insertionPoint is being processed at all
-            if (getJsonPropertyType(baseRequestBody.toString(), insertionPointName, baseValue).equals("number")) {
-                var modifiedBody = baseRequestBody
-                        .toString()
-                        .replaceFirst("\""+insertionPointName+"\"[\\s]*:[\\s]*"+baseValue, "\""+insertionPointName+"\":65534");
-                checkRequest = baseRequest.withBody(modifiedBody);
-            } else {
-                checkRequest = auditInsertionPoint.buildHttpRequestWithPayload(ByteArray.byteArray(_fuzzyPayload));
-            }
+            var property = jsonBodyIndex(baseRequestResponse).find(insertionPointName, baseValue);
+            if (property.isEmpty())
+                return new Tested(List.of(), true);
 
-            checkRequest = checkRequest.withService(baseRequestResponse.httpService());
+            var verdict = falsePositiveGates(baseRequestResponse, auditInsertionPoint, HttpParameterType.JSON, property.get());
+            if (verdict != GateVerdictCache.Verdict.LIVE) {
+                return new Tested(List.of(), verdict != null);
+            }
 
-            var checkRequestResponse = api.http().sendRequest(checkRequest);
+            return runPayloadPlan(baseRequestResponse, auditInsertionPoint, ProbeDefinition.Location.JSON_BODY, property.get());
+        } else if (baseRequest.contentType() == ContentType.URL_ENCODED) {
 
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                return auditResult(auditIssues);
+            var verdict = falsePositiveGates(baseRequestResponse, auditInsertionPoint, HttpParameterType.BODY, null);
+            if (verdict != GateVerdictCache.Verdict.LIVE) {
+                return new Tested(List.of(), verdict != null);
             }
 
-            // false positive check #2: test if removing the param changes the response
-            var param = baseRequest.parameter(insertionPointName, HttpParameterType.JSON);
-            checkRequest = baseRequest.withRemovedParameters(param);
+            return runPayloadPlan(baseRequestResponse, auditInsertionPoint, ProbeDefinition.Location.URLENCODED_BODY, null);
+        }
 
-            checkRequest = checkRequest.withService(baseRequestResponse.httpService());
+        return new Tested(List.of(), true);
+    }
 
-            checkRequestResponse = api.http().sendRequest(checkRequest);
+    /**
+     * A payload variant of one insertion point, built from a {@link ProbeDefinition}.
+     *
+     * @param highlights where the payload sits in the request
+     * @param response   the response once the probe was sent
+     */
+    private record Probe(ProbeDefinition definition, HttpRequest request, List<Marker> highlights, String payload, HttpRequestResponse response) {
 
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                return auditResult(auditIssues);
-            }
+        Probe withResponse(HttpRequestResponse response) {
+            return new Probe(definition, request, highlights, payload, response);
+        }
+    }
 
-            if (!getJsonPropertyType(baseRequestBody.toString(), insertionPointName, baseValue).equals("string")) {
-                var payload = ByteArray.byteArray(baseValue);
-
-                checkRequest = auditInsertionPoint
-                        .buildHttpRequestWithPayload(payload)
-                        .withService(baseRequestResponse.httpService());
-
-                checkRequestResponse = api.http().sendRequest(checkRequest);
-
-                if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-
-                    var requestHighlights = auditInsertionPoint.issueHighlights(payload);
-                    List<Marker> highlights = new ArrayList<Marker>();
-                    var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive(), requestHighlights.get(0).endIndexExclusive());
-                    highlights.add(marker);
-
-                    auditIssues.add(auditIssue(
-                            "Type confusion found in JSON body",
-                            "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as a string <b>" + payload + "</b> and the response was the same.",
-                            null,
-                            url,
-                            AuditIssueSeverity.INFORMATION,
-                            AuditIssueConfidence.FIRM,
-                            null,
-                            null,
-                            AuditIssueSeverity.INFORMATION,
-                            checkRequestResponse.withRequestMarkers(highlights)
-                    ));
-                }
-            }
+    /**
+     * Runs the payload plan for the insertion point, splicing every probe over the parameter's {@code name=value}
+     * pair (urlencoded) or value (JSON) and reporting every probe whose response did not change.
+     *
+     * @param property the indexed JSON property for {@link ProbeDefinition.Location#JSON_BODY}, otherwise {@code null}
+     */
+    private Tested runPayloadPlan(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint,
+                                            ProbeDefinition.Location location, JsonBodyIndex.Property property) {
+        var insertionPointName = auditInsertionPoint.name();
+        var baseRequest = baseRequestResponse.request();
+        var baseValue = auditInsertionPoint.baseValue();
 
-            if (!getJsonPropertyType(baseRequestBody.toString(), insertionPointName, baseValue).equals("string")) {
-                return auditResult(auditIssues);
-            }
+        var applicable = payloadPlan.applicable(location, property != null ? property.type().toString() : null);
+        if (schemaIndex != null) {
+            var prioritised = schemaIndex.prioritise(applicable, EndpointSignature.of(baseRequest), location,
+                    property != null ? property.path() : insertionPointName);
+            metrics.add("probes.skippedBySchema", applicable.size() - prioritised.size());
+            applicable = prioritised;
+        }
+        if (applicable.isEmpty())
+            return new Tested(List.of(), true);
+
+        var splicer = new RequestSplicer(baseRequestResponse.httpService(), baseRequest);
+        int start, end;
+        String name, value = null, json = null, string = null;
+        // payloads are expanded as text; JSON bodies are UTF-8, URL and urlencoded parameters are sent byte for byte
+        var charset = StandardCharsets.ISO_8859_1;
+
+        if (location == ProbeDefinition.Location.JSON_BODY) {
+            start = splicer.bodyOffset() + property.valueStart();
+            end = splicer.bodyOffset() + property.valueEnd();
+            name = insertionPointName;
+            charset = StandardCharsets.UTF_8;
+            json = splicer.sliceToString(start, end, charset);
+            string = "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(baseValue)) + "\"";
+        } else {
+            var parameter = baseRequest.parameter(insertionPointName, location == ProbeDefinition.Location.QUERY ? HttpParameterType.URL : HttpParameterType.BODY);
+            if (parameter == null)
+                return new Tested(List.of(), true);
+
+            start = parameter.nameOffsets().startIndexInclusive();
+            end = parameter.valueOffsets().endIndexExclusive();
+            name = splicer.sliceToString(start, parameter.nameOffsets().endIndexExclusive());
+            value = api.utilities().urlUtils().encode(baseValue);
+        }
 
-            var payload = "\""+insertionPointName+"\":["+getJsonSerializedValue(baseValue)+"]";
-            var modifiedBody = baseRequestBody
-                    .toString()
-                    .replaceFirst("\""+insertionPointName+"\"[\\s]*:[\\s]*"+getJsonSerializedValue(baseValue), payload);
-
-            checkRequest = baseRequest
-                    .withBody(modifiedBody)
-                    .withService(baseRequestResponse.httpService());
-
-            checkRequestResponse = api.http().sendRequest(checkRequest);
-
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                var requestHighlights = auditInsertionPoint.issueHighlights(ByteArray.byteArray(payload));
-                var highlights = new ArrayList<Marker>();
-                var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive(), requestHighlights.get(0).endIndexExclusive());
-                highlights.add(marker);
-
-                auditIssues.add(auditIssue(
-                        "Array confusion found in JSON body",
-                        "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as an array <b>" + payload + "</b> and the response was the same.",
-                        null,
-                        url,
-                        AuditIssueSeverity.INFORMATION,
-                        AuditIssueConfidence.FIRM,
-                        null,
-                        null,
-                        AuditIssueSeverity.INFORMATION,
-                        checkRequestResponse.withRequestMarkers(highlights)
-                ));
-            }
+        var expandedName = name;
+        var expandedValue = value;
+        var expandedJson = json;
+        var expandedString = string;
+        var payloadCharset = charset;
+        var unusable = new AtomicBoolean();
+
+        var confirmed = PayloadPlan.schedule(
+                applicable,
+                definition -> {
+                    var buildStart = System.nanoTime();
+                    var replacement = definition.expand(expandedName, expandedValue, expandedJson, expandedString);
+                    var spliced = splicer.splice(start, end, replacement.getBytes(payloadCharset));
+                    var payload = location == ProbeDefinition.Location.JSON_BODY ? "\"" + expandedName + "\":" + replacement : replacement;
+                    metrics.recordSince("time.requestBuilding", buildStart);
+                    return new Probe(definition, spliced.request(), spliced.markers(), payload, null);
+                },
+                phase -> sendProbes(baseRequestResponse, auditInsertionPoint, phase, unusable),
+                Probe::definition);
+
+        metrics.add("probes.confirmed", confirmed.size());
 
-            payload = "\""+insertionPointName+"\":[["+getJsonSerializedValue(baseValue)+"]]";
-            modifiedBody = baseRequestBody
-                    .toString()
-                    .replaceFirst("\""+insertionPointName+"\"[\\s]*:[\\s]*"+getJsonSerializedValue(baseValue), payload);
-
-            checkRequest = baseRequest
-                    .withBody(modifiedBody)
-                    .withService(baseRequestResponse.httpService());
-
-            checkRequestResponse = api.http().sendRequest(checkRequest);
-
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                var requestHighlights = auditInsertionPoint.issueHighlights(ByteArray.byteArray(payload));
-                var highlights = new ArrayList<Marker>();
-                var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive(), requestHighlights.get(0).endIndexExclusive());
-                highlights.add(marker);
-
-                auditIssues.add(auditIssue(
-                        "Nested Array confusion found in JSON body",
-                        "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as a nested array <b>" + payload + "</b> and the response was the same.",
-                        null,
-                        url,
-                        AuditIssueSeverity.INFORMATION,
-                        AuditIssueConfidence.FIRM,
-                        null,
-                        null,
-                        AuditIssueSeverity.INFORMATION,
-                        checkRequestResponse.withRequestMarkers(highlights)
-                ));
-            }
-        } else if (baseRequest.contentType() == ContentType.URL_ENCODED) {
+        var auditIssues = new ArrayList<AuditIssue>();
+        for (var probe : confirmed) {
+            auditIssues.add(confusionIssue(
+                    baseRequestResponse,
+                    auditInsertionPoint,
+                    probe.definition().family(),
+                    probe.definition().issueName(),
+                    probe.definition().description(),
+                    probe.payload(),
+                    "",
+                    evidenceStore.retain(probe.response()).withRequestMarkers(probe.highlights())
+            ));
+        }
 
-            // false positive check #1: test if putting garbage in the param changes the response
-            var checkRequest = auditInsertionPoint.buildHttpRequestWithPayload(ByteArray.byteArray(_fuzzyPayload));
+        return new Tested(auditIssues, !unusable.get());
+    }
 
-            checkRequest = checkRequest.withService(baseRequestResponse.httpService());
+    /**
+     * Sends one phase of probes concurrently and returns the probes whose response did not change.
+     *
+     * @param unusable set when a probe got no usable response
+     */
+    private List<Probe> sendProbes(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint, List<Probe> probes,
+                                   AtomicBoolean unusable) {
+        var checkRequestResponses = probeDispatcher.sendAll(ScanMetrics.Phase.PAYLOAD_PLAN, probes.stream().map(Probe::request).toList());
+
+        var unchanged = new ArrayList<Probe>();
+        for (int i = 0; i < probes.size(); i++) {
+            var probe = probes.get(i);
+            var checkRequestResponse = checkRequestResponses.get(i);
+
+            if (!ProbeDispatcher.usable(checkRequestResponse))
+                unusable.set(true);
+            else if (!detectChange(baseRequestResponse, checkRequestResponse, auditInsertionPoint.baseValue(), probe.payload()))
+                unchanged.add(probe.withResponse(checkRequestResponse));
+        }
+
+        return unchanged;
+    }
 
-            var checkRequestResponse = api.http().sendRequest(checkRequest);
+    private AuditIssue confusionIssue(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint, String technique,
+                                      String issueName, String description, String payload, String remark, HttpRequestResponse evidence) {
+        var baseRequest = baseRequestResponse.request();
+        var key = new IssueIndex.Key(EndpointSignature.of(baseRequestResponse.httpService(), baseRequest.pathWithoutQuery()),
+                auditInsertionPoint.type(), auditInsertionPoint.name(), technique);
+
+        return issueIndex.report(
+                key,
+                issueName,
+                "The response to the modified request has the same status and similar length to the base request. The value <b>" + auditInsertionPoint.baseValue() + "</b> of the parameter <b>" + auditInsertionPoint.name() + "</b>, was resubmitted as " + description + " <b>" + payload + "</b> and the response was the same." + remark,
+                baseRequest.url(),
+                evidence
+        );
+    }
 
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                return auditResult(auditIssues);
+    /**
+     * @param property the indexed JSON property for {@link HttpParameterType#JSON}, otherwise {@code null}
+     * @return the verdict of the gates, {@code null} when a gate probe got no usable response
+     */
+    private GateVerdictCache.Verdict falsePositiveGates(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint,
+                                                        HttpParameterType parameterType, JsonBodyIndex.Property property) {
+        var endpoint = EndpointSignature.of(baseRequestResponse.httpService(), baseRequestResponse.request().pathWithoutQuery());
+        var key = new GateVerdictCache.Key(endpoint, auditInsertionPoint.type(), property != null ? property.path() : auditInsertionPoint.name());
+
+        var verdict = gateVerdictCache.verdict(key);
+        if (verdict == null) {
+            verdict = sendFalsePositiveGates(baseRequestResponse, auditInsertionPoint, parameterType, property);
+            if (verdict == null) {
+                metrics.increment("gate.unusable");
+                return null;
             }
+            gateVerdictCache.record(key, verdict);
+        } else {
+            metrics.increment("gate.cached");
+        }
 
-            // false positive check #2: test if removing the param changes the response
-            var param = baseRequest.parameter(insertionPointName, HttpParameterType.BODY);
-            checkRequest = baseRequest.withRemovedParameters(param);
+        metrics.gateVerdict(verdict);
+        return verdict;
+    }
 
-            checkRequest = checkRequest.withService(baseRequestResponse.httpService());
+    private GateVerdictCache.Verdict sendFalsePositiveGates(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint,
+                                                            HttpParameterType parameterType, JsonBodyIndex.Property property) {
+        var insertionPointName = auditInsertionPoint.name();
+        var baseRequest = baseRequestResponse.request();
+        var baseValue = auditInsertionPoint.baseValue();
 
-            checkRequestResponse = api.http().sendRequest(checkRequest);
+        // false positive check #1: test if putting garbage in the param changes the response
+        HttpRequest checkRequest;
+        var buildStart = System.nanoTime();
+
+        if (property != null && property.type() != JsonBodyIndex.Type.STRING) {
+            var splicer = new RequestSplicer(baseRequestResponse.httpService(), baseRequest);
+            checkRequest = splicer.splice(splicer.bodyOffset() + property.valueStart(), splicer.bodyOffset() + property.valueEnd(), "65534").request();
+        } else {
+            checkRequest = auditInsertionPoint.buildHttpRequestWithPayload(ByteArray.byteArray(_fuzzyPayload));
+        }
 
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                return auditResult(auditIssues);
-            }
+        checkRequest = checkRequest.withService(baseRequestResponse.httpService());
+        metrics.recordSince("time.requestBuilding", buildStart);
 
-            var payload = String.format("%s[]=%s&%s[]=%s2", insertionPointName, api.utilities().urlUtils().encode(baseValue), insertionPointName, api.utilities().urlUtils().encode(baseValue));
-
-            var modifiedBody = baseRequest.body()
-                    .toString()
-                    .replaceFirst(insertionPointName+"=[^&#$]*", payload);
-
-            checkRequest = baseRequest.withBody(modifiedBody)
-                    .withService(baseRequestResponse.httpService());
-
-            checkRequestResponse = api.http().sendRequest(checkRequest);
-
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                var requestHighlights = auditInsertionPoint.issueHighlights(ByteArray.byteArray(payload));
-                var highlights = new ArrayList<Marker>();
-                var offset = insertionPointName.length() + 1;
-                var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive() - offset, requestHighlights.get(0).endIndexExclusive() - offset);
-                highlights.add(marker);
-
-                auditIssues.add(auditIssue(
-                        "Array confusion found in urlencoded body parameter",
-                        "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as an array <b>" + payload + "</b> and the response was the same.",
-                        null,
-                        url,
-                        AuditIssueSeverity.INFORMATION,
-                        AuditIssueConfidence.FIRM,
-                        null,
-                        null,
-                        AuditIssueSeverity.INFORMATION,
-                        checkRequestResponse.withRequestMarkers(highlights)
-                ));
-            }
-            
-            payload = String.format("%s[0]=%s&%s[1]=%s2", insertionPointName, api.utilities().urlUtils().encode(baseValue), insertionPointName, api.utilities().urlUtils().encode(baseValue));
-
-            modifiedBody = baseRequest.body()
-                    .toString()
-                    .replaceFirst(insertionPointName+"=[^&#$]*", payload);
-
-            checkRequest = baseRequest.withBody(modifiedBody)
-                    .withService(baseRequestResponse.httpService());
-
-            checkRequestResponse = api.http().sendRequest(checkRequest);
-
-            if (!detectChange(baseRequestResponse, checkRequestResponse)) {
-                var requestHighlights = auditInsertionPoint.issueHighlights(ByteArray.byteArray(payload));
-                var highlights = new ArrayList<Marker>();
-                var offset = insertionPointName.length() + 1;
-                var marker = Marker.marker(requestHighlights.get(0).startIndexInclusive() - offset, requestHighlights.get(0).endIndexExclusive() - offset);
-                highlights.add(marker);
-
-                auditIssues.add(auditIssue(
-                        "Array confusion found in urlencoded body parameter",
-                        "The response to the modified request has the same status and similar length to the base request. The value <b>" + baseValue + "</b>, was resubmitted as an array <b>" + payload + "</b> and the response was the same.",
-                        null,
-                        url,
-                        AuditIssueSeverity.INFORMATION,
-                        AuditIssueConfidence.FIRM,
-                        null,
-                        null,
-                        AuditIssueSeverity.INFORMATION,
-                        checkRequestResponse.withRequestMarkers(highlights)
-                ));
-            }
+        var checkRequestResponse = probeDispatcher.send(ScanMetrics.Phase.FUZZY_GATE, checkRequest);
+        if (!ProbeDispatcher.usable(checkRequestResponse))
+            return null;
+
+        if (!detectChange(baseRequestResponse, checkRequestResponse, baseValue, _fuzzyPayload)) {
+            return GateVerdictCache.Verdict.INERT_FUZZY;
         }
 
-        return auditResult(auditIssues);
-    }
+        // false positive check #2: test if removing the param changes the response
+        buildStart = System.nanoTime();
+        var param = baseRequest.parameter(insertionPointName, parameterType);
+        checkRequest = baseRequest.withRemovedParameters(param);
 
-    private boolean detectChange(HttpRequestResponse baseRequestResponse, HttpRequestResponse checkRequestResponse) {
-        var baseResponse = baseRequestResponse.response();
-        var checkResponse = checkRequestResponse.response();
+        checkRequest = checkRequest.withService(baseRequestResponse.httpService());
+        metrics.recordSince("time.requestBuilding", buildStart);
 
-        if (baseResponse.statusCode() != checkResponse.statusCode())
-            return true;
+        checkRequestResponse = probeDispatcher.send(ScanMetrics.Phase.REMOVAL_GATE, checkRequest);
+        if (!ProbeDispatcher.usable(checkRequestResponse))
+            return null;
 
-        var baseResponseBodyLength = baseResponse.body().length();
-        var checkResponseBodyLength = checkResponse.body().length();
+        if (!detectChange(baseRequestResponse, checkRequestResponse, baseValue)) {
+            return GateVerdictCache.Verdict.INERT_REMOVAL;
+        }
 
-        return baseResponseBodyLength > checkResponseBodyLength + checkResponseBodyLength / 100 * 40
-            || checkResponseBodyLength > baseResponseBodyLength + baseResponseBodyLength / 100 * 40;
+        return GateVerdictCache.Verdict.LIVE;
     }
 
-    private String getJsonPropertyType(String json, String baseName, String baseValue) throws JsonProcessingException {
-        var mapper = new ObjectMapper();
-        var jsonValue = mapper.writeValueAsString(baseValue);
-
-        Pattern pattern = Pattern.compile("\""+baseName+"\"[\\s]*:[\\s]*"+jsonValue);
-        Matcher matcher = pattern.matcher(json);
-        boolean matchFound = matcher.find();
-
-        return matchFound
-                ? "string"
-                : jsonValue.startsWith("{")
-                ? "object"
+    private boolean detectChange(HttpRequestResponse baseRequestResponse, HttpRequestResponse checkRequestResponse, String... reflected) {
+        var profile = varianceProfiles.profile(baseRequestResponse);
+        var start = System.nanoTime();
+        try {
+            return responseSimilarity.changed(baseRequestResponse, checkRequestResponse, profile, reflected);
+        } finally {
+            metrics.recordSince("time.responseComparison", start);
+        }
+    }
 
-                : jsonValue.startsWith("[")
-                ? "array"
-                : jsonValue.equals("true") || jsonValue.equals("false")
-                ? "bool"
-                : "number";
+    /**
+     * The name an insertion point is keyed on in gate verdicts and group results: the property path for JSON
+     * parameters, otherwise the parameter name.
+     */
+    private String parameterKey(HttpRequestResponse baseRequestResponse, AuditInsertionPoint auditInsertionPoint) {
+        if (auditInsertionPoint.type() != AuditInsertionPointType.PARAM_JSON)
+            return auditInsertionPoint.name();
+
+        return jsonBodyIndex(baseRequestResponse).find(auditInsertionPoint.name(), auditInsertionPoint.baseValue())
+                .map(JsonBodyIndex.Property::path)
+                .orElse(auditInsertionPoint.name());
     }
 
-    private String getJsonSerializedValue(String value) throws JsonProcessingException {
-        var mapper = new ObjectMapper();
-        return mapper.writeValueAsString(value);
+    /**
+     * Indexes the JSON body of the base request once; every insertion point of the base request shares the index.
+     */
+    private JsonBodyIndex jsonBodyIndex(HttpRequestResponse baseRequestResponse) {
+        var key = contentKeys.of(baseRequestResponse);
+        var index = jsonBodyIndexes.get(key);
+        if (index == null) {
+            var start = System.nanoTime();
+            index = JsonBodyIndex.parse(baseRequestResponse.request().body().getBytes());
+            metrics.recordSince("time.jsonTypeDetection", start);
+            jsonBodyIndexes.put(key, index);
+        }
+
+        return index;
     }
 }
@@ -1,13 +1,45 @@
 import burp.api.montoya.BurpExtension;
 import burp.api.montoya.MontoyaApi;
 
+import java.io.IOException;
+
 public class TypeConfusionScanner implements BurpExtension {
     @Override
     public void initialize(MontoyaApi api)
     {
         api.extension().setName("TypeConfusionScannerPlusPlus");
 
-        api.scanner().registerScanCheck(new TypeConfusionCheck(api));
+        // the state of the previous scan is read in the background and awaited by the first audit
+        var config = new ScanConfig(api);
+        var stateFile = config.incrementalStateFile();
+        var scanState = stateFile != null ? ScanStateStore.load(stateFile, config.simHashMaxDistance(), api.logging()) : null;
+
+        var check = new TypeConfusionCheck(api, scanState);
+        api.scanner().registerScanCheck(check);
+
+        var metricsTab = new MetricsTab(api, check.metrics());
+        api.userInterface().applyThemeToComponent(metricsTab.component());
+        api.userInterface().registerSuiteTab("Type Confusion", metricsTab.component());
+        metricsTab.start();
+
+        api.extension().registerUnloadingHandler(() -> {
+            metricsTab.stop();
+            check.shutdown();
+            api.logging().logToOutput(check.gateVerdictCache().statistics());
+            api.logging().logToOutput(check.rateController().statistics());
+            if (check.responseCache() != null)
+                api.logging().logToOutput(check.responseCache().statistics());
+            if (check.requestBudget() != null)
+                api.logging().logToOutput(check.requestBudget().statistics());
+            if (scanState != null) {
+                try {
+                    scanState.save();
+                    api.logging().logToOutput(scanState.statistics());
+                } catch (IOException ex) {
+                    api.logging().logToError("Could not save scan state " + stateFile + ": " + ex.getMessage());
+                }
+            }
+        });
 
         api.logging().logToOutput("TypeConfusionScannerPlusPlus loaded successfully.");
     }
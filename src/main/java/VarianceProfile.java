@@ -0,0 +1,11 @@
+/**
+ * Natural variance of an endpoint, measured by re-sending its base request a few times. The comparators
+ * widen their configured thresholds to it for endpoints that vary more than those allow, never narrow them.
+ *
+ * @param lengthTolerancePercent body length deviation tolerated before a response counts as changed
+ * @param simHashDistance        differing SimHash bits tolerated before a response counts as changed
+ * @param headersStable          whether the set of header names stayed the same across re-sends
+ * @param bodyStable             whether the body stayed byte for byte the same across re-sends
+ */
+record VarianceProfile(int samples, int lengthTolerancePercent, int simHashDistance, boolean headersStable, boolean bodyStable) {
+}
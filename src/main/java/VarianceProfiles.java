@@ -0,0 +1,99 @@
+import burp.api.montoya.http.message.HttpRequestResponse;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Shared table of per-endpoint {@link VarianceProfile}s. The first insertion point of an endpoint pays for
+ * the calibration re-sends, every later insertion point of that endpoint reuses the profile. Only requests
+ * with a safe method are re-sent; repeating a POST, PUT or DELETE would repeat its side effect.
+ */
+class VarianceProfiles {
+
+    private static final int MIN_LENGTH_TOLERANCE_PERCENT = 10;
+    private static final int MAX_LENGTH_TOLERANCE_PERCENT = 80;
+    private static final int SIMHASH_MARGIN = 3;
+    private static final Set<String> RESENDABLE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    record Key(EndpointSignature endpoint, String method) { }
+
+    private final ProbeDispatcher probeDispatcher;
+    private final int samples;
+    private final BoundedCache<Key, CompletableFuture<VarianceProfile>> profiles = new BoundedCache<>(5_000, 30 * 60 * 1000L);
+
+    VarianceProfiles(ProbeDispatcher probeDispatcher, int samples)
+    {
+        this.probeDispatcher = probeDispatcher;
+        this.samples = samples;
+    }
+
+    /**
+     * Returns the profile of the base request's endpoint, measuring it on first use, or {@code null} when
+     * profiling is disabled, the base request must not be re-sent or has no response to compare against.
+     */
+    VarianceProfile profile(HttpRequestResponse baseRequestResponse) {
+        if (samples <= 0 || baseRequestResponse.response() == null)
+            return null;
+
+        var request = baseRequestResponse.request();
+        if (!RESENDABLE_METHODS.contains(request.method().toUpperCase()))
+            return null;
+
+        var key = new Key(EndpointSignature.of(baseRequestResponse.httpService(), request.pathWithoutQuery()), request.method());
+        var pending = new CompletableFuture<VarianceProfile>();
+        var profile = profiles.computeIfAbsent(key, ignored -> pending);
+
+        if (profile == pending) {
+            try {
+                pending.complete(measure(baseRequestResponse));
+            } catch (RuntimeException ex) {
+                profiles.remove(key);
+                pending.complete(null);
+            }
+        }
+
+        return profile.join();
+    }
+
+    private VarianceProfile measure(HttpRequestResponse baseRequestResponse) {
+        var baseRequest = baseRequestResponse.request().withService(baseRequestResponse.httpService());
+        var requests = Collections.nCopies(samples, baseRequest);
+
+        var baseResponse = baseRequestResponse.response();
+        var baseBody = baseResponse.body().getBytes();
+        var headerSet = new ResponseComparators.HeaderSet();
+        var bodyHash = new ResponseComparators.ReflectionStrippedHash();
+
+        var baseHeaders = headerSet.fingerprint(baseResponse, baseBody, List.of());
+        var baseSimHash = ResponseComparators.SimHash.simHash(baseBody);
+        var baseBodyHash = bodyHash.fingerprint(baseResponse, baseBody, List.of());
+
+        var maxLengthDeviation = 0.0;
+        var maxSimHashDistance = 0;
+        var headersStable = true;
+        var bodyStable = true;
+
+        for (var sample : probeDispatcher.sendAll(ScanMetrics.Phase.VARIANCE, requests)) {
+            var response = sample.response();
+            if (response == null)
+                continue;
+
+            var body = response.body().getBytes();
+            maxLengthDeviation = Math.max(maxLengthDeviation, Math.abs(body.length - baseBody.length) * 100.0 / Math.max(1, baseBody.length));
+            maxSimHashDistance = Math.max(maxSimHashDistance, Long.bitCount(baseSimHash ^ ResponseComparators.SimHash.simHash(body)));
+            headersStable &= baseHeaders.equals(headerSet.fingerprint(response, body, List.of()));
+            bodyStable &= baseBodyHash.equals(bodyHash.fingerprint(response, body, List.of()));
+        }
+
+        var lengthTolerance = (int) Math.ceil(maxLengthDeviation * 2) + MIN_LENGTH_TOLERANCE_PERCENT;
+
+        return new VarianceProfile(
+                samples,
+                Math.min(MAX_LENGTH_TOLERANCE_PERCENT, lengthTolerance),
+                Math.min(63, maxSimHashDistance + SIMHASH_MARGIN),
+                headersStable,
+                bodyStable);
+    }
+}
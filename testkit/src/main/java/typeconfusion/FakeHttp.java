@@ -0,0 +1,477 @@
+package typeconfusion;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.core.Marker;
+import burp.api.montoya.core.Range;
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.ContentType;
+import burp.api.montoya.http.message.HttpHeader;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.params.HttpParameter;
+import burp.api.montoya.http.message.params.HttpParameterType;
+import burp.api.montoya.http.message.params.ParsedHttpParameter;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import burp.api.montoya.internal.MontoyaObjectFactory;
+import burp.api.montoya.internal.ObjectFactoryLocator;
+import burp.api.montoya.scanner.AuditResult;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPoint;
+import burp.api.montoya.scanner.audit.insertionpoint.AuditInsertionPointType;
+import burp.api.montoya.scanner.audit.issues.AuditIssue;
+import burp.api.montoya.scanner.audit.issues.AuditIssueConfidence;
+import burp.api.montoya.scanner.audit.issues.AuditIssueSeverity;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-process implementations of the Montoya HTTP message types the scanner uses, parsed from raw bytes the way
+ * Burp reports them: URL and urlencoded parameters with the offsets of their raw name and value, JSON parameters
+ * for every scalar property with string values reported without their quotes. Montoya's static factories
+ * normally resolve through the running Burp instance; {@link #installObjectFactory()} points them here instead.
+ *
+ * Only the methods the scanner calls are implemented, anything else throws.
+ */
+final class FakeHttp {
+
+    private FakeHttp() {
+    }
+
+    static synchronized void installObjectFactory() {
+        ObjectFactoryLocator.FACTORY = proxy(MontoyaObjectFactory.class, (proxy, method, args) -> switch (method.getName()) {
+            case "byteArray" -> args[0] instanceof byte[] bytes ? byteArray(bytes)
+                    : args[0] instanceof String string ? byteArray(string.getBytes(StandardCharsets.ISO_8859_1))
+                    : unsupported("byteArray(" + args[0].getClass().getSimpleName() + ")");
+            case "marker" -> marker((int) args[0], (int) args[1]);
+            case "range" -> range((int) args[0], (int) args[1]);
+            case "httpService" -> service((String) args[0], (int) args[1], (boolean) args[2]);
+            case "httpRequest" -> args.length == 2 && args[1] instanceof ByteArray raw ? request((HttpService) args[0], raw.getBytes())
+                    : args.length == 2 && args[1] instanceof String raw ? request((HttpService) args[0], raw.getBytes(StandardCharsets.ISO_8859_1))
+                    : unsupported("httpRequest");
+            case "auditIssue" -> auditIssue(args);
+            case "auditResult" -> auditResult(args[0]);
+            default -> identity(proxy, method.getName(), args, "FakeMontoyaObjectFactory");
+        });
+    }
+
+    static ByteArray byteArray(byte[] bytes) {
+        return proxy(ByteArray.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getBytes" -> bytes;
+            case "length" -> bytes.length;
+            case "getByte" -> bytes[(int) args[0]];
+            case "subArray" -> byteArray(Arrays.copyOfRange(bytes, (int) args[0], (int) args[1]));
+            default -> identity(proxy, method.getName(), args, new String(bytes, StandardCharsets.ISO_8859_1));
+        });
+    }
+
+    static HttpService service(String host, int port, boolean secure) {
+        return proxy(HttpService.class, (proxy, method, args) -> switch (method.getName()) {
+            case "host" -> host;
+            case "port" -> port;
+            case "secure" -> secure;
+            default -> identity(proxy, method.getName(), args, host + ":" + port);
+        });
+    }
+
+    static Range range(int start, int end) {
+        return proxy(Range.class, (proxy, method, args) -> switch (method.getName()) {
+            case "startIndexInclusive" -> start;
+            case "endIndexExclusive" -> end;
+            case "contains" -> (int) args[0] >= start && (int) args[0] < end;
+            default -> identity(proxy, method.getName(), args, "[" + start + ", " + end + ")");
+        });
+    }
+
+    static Marker marker(int start, int end) {
+        var range = range(start, end);
+        return proxy(Marker.class, (proxy, method, args) -> switch (method.getName()) {
+            case "range" -> range;
+            default -> identity(proxy, method.getName(), args, range.toString());
+        });
+    }
+
+    static HttpHeader header(String name, String value) {
+        return proxy(HttpHeader.class, (proxy, method, args) -> switch (method.getName()) {
+            case "name" -> name;
+            case "value" -> value;
+            default -> identity(proxy, method.getName(), args, name + ": " + value);
+        });
+    }
+
+    static HttpRequest request(HttpService service, byte[] raw) {
+        var message = new RequestMessage(service, raw);
+        return proxy(HttpRequest.class, (proxy, method, args) -> switch (method.getName()) {
+            case "toByteArray" -> byteArray(raw);
+            case "httpService" -> service;
+            case "method" -> message.head().method;
+            case "path" -> message.head().target;
+            case "pathWithoutQuery" -> message.pathWithoutQuery();
+            case "url" -> message.url();
+            case "bodyOffset" -> message.bodyOffset;
+            case "body" -> byteArray(Arrays.copyOfRange(raw, message.bodyOffset, raw.length));
+            case "bodyToString" -> new String(raw, message.bodyOffset, raw.length - message.bodyOffset, StandardCharsets.ISO_8859_1);
+            case "headers" -> message.head().headers;
+            case "headerValue" -> message.headerValue((String) args[0]);
+            case "contentType" -> message.head().contentType;
+            case "parameters" -> message.parameters();
+            case "parameter" -> message.parameter((String) args[0], (HttpParameterType) args[1]);
+            case "withService" -> request((HttpService) args[0], raw);
+            case "withBody" -> request(service, message.withBody(args[0] instanceof ByteArray body ? body.getBytes() : ((String) args[0]).getBytes(StandardCharsets.ISO_8859_1)));
+            case "withRemovedParameters" -> message.withRemovedParameters(args[0] instanceof List<?> list ? list : Arrays.asList((Object[]) args[0]));
+            default -> identity(proxy, method.getName(), args, new String(raw, StandardCharsets.ISO_8859_1));
+        });
+    }
+
+    static HttpResponse response(int statusCode, List<HttpHeader> headers, byte[] body) {
+        return proxy(HttpResponse.class, (proxy, method, args) -> switch (method.getName()) {
+            case "statusCode" -> (short) statusCode;
+            case "headers" -> headers;
+            case "headerValue" -> headers.stream().filter(header -> header.name().equalsIgnoreCase((String) args[0])).map(HttpHeader::value).findFirst().orElse(null);
+            case "body" -> byteArray(body);
+            case "bodyToString" -> new String(body, StandardCharsets.ISO_8859_1);
+            case "toByteArray" -> byteArray(responseBytes(statusCode, headers, body));
+            default -> identity(proxy, method.getName(), args, "HTTP " + statusCode);
+        });
+    }
+
+    private static byte[] responseBytes(int statusCode, List<HttpHeader> headers, byte[] body) {
+        var head = new StringBuilder("HTTP/1.1 ").append(statusCode).append("\r\n");
+        for (var header : headers)
+            head.append(header.name()).append(": ").append(header.value()).append("\r\n");
+        var headBytes = head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        var bytes = Arrays.copyOf(headBytes, headBytes.length + body.length);
+        System.arraycopy(body, 0, bytes, headBytes.length, body.length);
+        return bytes;
+    }
+
+    static HttpRequestResponse requestResponse(HttpRequest request, HttpResponse response, List<Marker> requestMarkers) {
+        return proxy(HttpRequestResponse.class, (proxy, method, args) -> switch (method.getName()) {
+            case "request" -> request;
+            case "response" -> response;
+            case "httpService" -> request.httpService();
+            case "hasResponse" -> response != null;
+            case "requestMarkers" -> requestMarkers;
+            case "withRequestMarkers" -> requestResponse(request, response, markers(args[0]));
+            case "copyToTempFile" -> proxy;
+            default -> identity(proxy, method.getName(), args, request.method() + " " + request.url());
+        });
+    }
+
+    static AuditIssue auditIssue(Object[] args) {
+        var requestResponses = args[9] instanceof List<?> list ? list : List.of((Object[]) args[9]);
+        return proxy(AuditIssue.class, (proxy, method, methodArgs) -> switch (method.getName()) {
+            case "name" -> args[0];
+            case "detail" -> args[1];
+            case "remediation" -> args[2];
+            case "baseUrl" -> args[3];
+            case "severity" -> (AuditIssueSeverity) args[4];
+            case "confidence" -> (AuditIssueConfidence) args[5];
+            case "requestResponses" -> requestResponses;
+            case "httpService" -> requestResponses.isEmpty() ? null : ((HttpRequestResponse) requestResponses.get(0)).httpService();
+            default -> identity(proxy, method.getName(), methodArgs, args[0] + " at " + args[3]);
+        });
+    }
+
+    static AuditResult auditResult(Object issues) {
+        var list = issues instanceof List<?> given ? given : List.of((Object[]) issues);
+        return proxy(AuditResult.class, (proxy, method, args) -> switch (method.getName()) {
+            case "auditIssues" -> list;
+            default -> identity(proxy, method.getName(), args, list.size() + " issues");
+        });
+    }
+
+    /**
+     * The insertion point Burp would create for a parameter: payloads replace the raw value, encoded for the
+     * parameter's syntax.
+     */
+    static AuditInsertionPoint insertionPoint(HttpRequest request, ParsedHttpParameter parameter) {
+        var type = switch (parameter.type()) {
+            case URL -> AuditInsertionPointType.PARAM_URL;
+            case BODY -> AuditInsertionPointType.PARAM_BODY;
+            case JSON -> AuditInsertionPointType.PARAM_JSON;
+            default -> AuditInsertionPointType.UNKNOWN;
+        };
+
+        return proxy(AuditInsertionPoint.class, (proxy, method, args) -> switch (method.getName()) {
+            case "name" -> parameter.name();
+            case "baseValue" -> parameter.value();
+            case "type" -> type;
+            case "buildHttpRequestWithPayload" -> splicePayload(request, parameter, (ByteArray) args[0]).request();
+            case "issueHighlights" -> List.of(splicePayload(request, parameter, (ByteArray) args[0]).markers().get(0).range());
+            default -> identity(proxy, method.getName(), args, type + " " + parameter.name());
+        });
+    }
+
+    private static RequestSplicer.Spliced splicePayload(HttpRequest request, ParsedHttpParameter parameter, ByteArray payload) {
+        var value = new String(payload.getBytes(), StandardCharsets.ISO_8859_1);
+        var encoded = parameter.type() == HttpParameterType.JSON
+                ? new String(JsonStringEncoder.getInstance().quoteAsString(value))
+                : URLEncoder.encode(value, StandardCharsets.UTF_8);
+
+        var splicer = new RequestSplicer(request.httpService(), request);
+        return splicer.splice(parameter.valueOffsets().startIndexInclusive(), parameter.valueOffsets().endIndexExclusive(), encoded);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Marker> markers(Object markers) {
+        return markers instanceof List<?> list ? (List<Marker>) list : List.of((Marker[]) markers);
+    }
+
+    /**
+     * The raw request with its request line and headers parsed on first use, so requests that are only built and
+     * spliced, as on the benchmarked paths, cost no more than locating the body.
+     */
+    private static final class RequestMessage {
+        private final HttpService service;
+        private final byte[] raw;
+        private final int headerEnd;
+        private final int bodyOffset;
+        private volatile String text;
+        private volatile Head head;
+        private volatile List<ParsedHttpParameter> parameters;
+
+        private RequestMessage(HttpService service, byte[] raw) {
+            this.service = service;
+            this.raw = raw;
+            this.headerEnd = headerEnd(raw);
+            this.bodyOffset = headerEnd == raw.length ? raw.length : headerEnd + 4;
+        }
+
+        private String text() {
+            if (text == null)
+                text = new String(raw, StandardCharsets.ISO_8859_1);
+            return text;
+        }
+
+        private Head head() {
+            if (head == null)
+                head = new Head(new String(raw, 0, headerEnd, StandardCharsets.ISO_8859_1));
+            return head;
+        }
+
+        private static int headerEnd(byte[] raw) {
+            for (int i = 0; i + 3 < raw.length; i++) {
+                if (raw[i] == '\r' && raw[i + 1] == '\n' && raw[i + 2] == '\r' && raw[i + 3] == '\n')
+                    return i;
+            }
+            return raw.length;
+        }
+
+        private String headerValue(String name) {
+            return head().headerValue(name);
+        }
+
+        private String pathWithoutQuery() {
+            var target = head().target;
+            var query = target.indexOf('?');
+            return query < 0 ? target : target.substring(0, query);
+        }
+
+        private String url() {
+            var defaultPort = service.secure() ? 443 : 80;
+            return (service.secure() ? "https://" : "http://") + service.host() + (service.port() == defaultPort ? "" : ":" + service.port()) + head().target;
+        }
+
+        /**
+         * Replaces the body and rewrites Content-Length the way Burp's {@code withBody} does.
+         */
+        private byte[] withBody(byte[] body) {
+            var headers = new String(raw, 0, bodyOffset, StandardCharsets.ISO_8859_1)
+                    .replaceFirst("(?im)^Content-Length:[^\r\n]*", "Content-Length: " + body.length)
+                    .getBytes(StandardCharsets.ISO_8859_1);
+
+            var output = Arrays.copyOf(headers, headers.length + body.length);
+            System.arraycopy(body, 0, output, headers.length, body.length);
+            return output;
+        }
+
+        private List<ParsedHttpParameter> parameters() {
+            if (parameters == null) {
+                var parsed = new ArrayList<ParsedHttpParameter>();
+                var head = head();
+
+                var query = head.target.indexOf('?');
+                if (query >= 0)
+                    addPairs(parsed, HttpParameterType.URL, head.targetStart + query + 1, head.targetEnd());
+
+                if (head.contentType == ContentType.URL_ENCODED)
+                    addPairs(parsed, HttpParameterType.BODY, bodyOffset, raw.length);
+                else if (head.contentType == ContentType.JSON)
+                    addJsonProperties(parsed);
+
+                parameters = List.copyOf(parsed);
+            }
+            return parameters;
+        }
+
+        private ParsedHttpParameter parameter(String name, HttpParameterType type) {
+            return parameters().stream().filter(parameter -> parameter.type() == type && parameter.name().equals(name)).findFirst().orElse(null);
+        }
+
+        private void addPairs(List<ParsedHttpParameter> parsed, HttpParameterType type, int start, int end) {
+            var text = text();
+            var pairStart = start;
+            while (pairStart < end) {
+                var pairEnd = text.indexOf('&', pairStart);
+                if (pairEnd < 0 || pairEnd > end)
+                    pairEnd = end;
+
+                if (pairEnd > pairStart) {
+                    var equals = text.indexOf('=', pairStart);
+                    var nameEnd = equals < 0 || equals > pairEnd ? pairEnd : equals;
+                    var valueStart = equals < 0 || equals > pairEnd ? pairEnd : equals + 1;
+                    parsed.add(parameter(type, pairStart, nameEnd, valueStart, pairEnd));
+                }
+
+                pairStart = pairEnd + 1;
+            }
+        }
+
+        private void addJsonProperties(List<ParsedHttpParameter> parsed) {
+            var text = text();
+            var index = JsonBodyIndex.parse(Arrays.copyOfRange(raw, bodyOffset, raw.length));
+            for (var property : index.properties()) {
+                if (property.type() == JsonBodyIndex.Type.OBJECT || property.type() == JsonBodyIndex.Type.ARRAY || property.path().endsWith("]"))
+                    continue;
+
+                var valueStart = bodyOffset + property.valueStart();
+                var valueEnd = bodyOffset + property.valueEnd();
+                if (property.type() == JsonBodyIndex.Type.STRING) {
+                    valueStart++;
+                    valueEnd--;
+                }
+
+                var nameEnd = text.lastIndexOf('"', text.lastIndexOf(':', bodyOffset + property.valueStart()));
+                var nameStart = text.lastIndexOf('"', nameEnd - 1) + 1;
+                parsed.add(parameter(HttpParameterType.JSON, nameStart, nameEnd, valueStart, valueEnd));
+            }
+        }
+
+        private ParsedHttpParameter parameter(HttpParameterType type, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+            var text = text();
+            var name = text.substring(nameStart, nameEnd);
+            var value = text.substring(valueStart, valueEnd);
+            var nameOffsets = range(nameStart, nameEnd);
+            var valueOffsets = range(valueStart, valueEnd);
+
+            return proxy(ParsedHttpParameter.class, (proxy, method, args) -> switch (method.getName()) {
+                case "name" -> name;
+                case "value" -> value;
+                case "type" -> type;
+                case "nameOffsets" -> nameOffsets;
+                case "valueOffsets" -> valueOffsets;
+                default -> identity(proxy, method.getName(), args, type + " " + name + "=" + value);
+            });
+        }
+
+        /**
+         * Removes each parameter together with one adjacent separator, updating Content-Length.
+         */
+        private HttpRequest withRemovedParameters(List<?> removed) {
+            var text = text();
+            var edits = new ArrayList<RequestSplicer.Edit>();
+            for (var item : removed) {
+                var toRemove = (HttpParameter) item;
+                var parameter = parameter(toRemove.name(), toRemove.type());
+                if (parameter == null)
+                    continue;
+
+                var start = parameter.nameOffsets().startIndexInclusive();
+                var end = parameter.valueOffsets().endIndexExclusive();
+                var separator = parameter.type() == HttpParameterType.JSON ? ',' : '&';
+                if (parameter.type() == HttpParameterType.JSON) {
+                    start--;
+                    if (text.charAt(end) == '"')
+                        end++;
+                }
+
+                var next = skipWhitespace(end);
+                if (next < raw.length && text.charAt(next) == separator) {
+                    end = skipWhitespace(next + 1);
+                } else {
+                    var previous = start - 1;
+                    while (previous > 0 && Character.isWhitespace(text.charAt(previous)))
+                        previous--;
+                    if (previous >= 0 && (text.charAt(previous) == separator || (parameter.type() == HttpParameterType.URL && text.charAt(previous) == '?' && next >= head().targetEnd())))
+                        start = previous;
+                }
+
+                edits.add(new RequestSplicer.Edit(start, end, new byte[0]));
+            }
+
+            edits.sort((a, b) -> Integer.compare(a.start(), b.start()));
+            return new RequestSplicer(service, FakeHttp.request(service, raw)).splice(edits).request();
+        }
+
+        private int skipWhitespace(int index) {
+            var text = text();
+            while (index < raw.length && (text.charAt(index) == ' ' || text.charAt(index) == '\t' || text.charAt(index) == '\r' || text.charAt(index) == '\n') && index >= bodyOffset)
+                index++;
+            return index;
+        }
+    }
+
+    private static final class Head {
+        private final String method;
+        private final String target;
+        private final int targetStart;
+        private final List<HttpHeader> headers = new ArrayList<>();
+        private final ContentType contentType;
+
+        private Head(String text) {
+            var lines = text.split("\r\n");
+            var requestLine = lines[0].split(" ", 3);
+            this.method = requestLine[0];
+            this.target = requestLine.length > 1 ? requestLine[1] : "/";
+            this.targetStart = method.length() + 1;
+
+            for (int i = 1; i < lines.length; i++) {
+                var colon = lines[i].indexOf(':');
+                if (colon > 0)
+                    headers.add(header(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim()));
+            }
+
+            var type = headerValue("Content-Type");
+            type = type == null ? "" : type.toLowerCase();
+            this.contentType = type.contains("json") ? ContentType.JSON
+                    : type.contains("x-www-form-urlencoded") ? ContentType.URL_ENCODED
+                    : type.contains("multipart") ? ContentType.MULTIPART
+                    : type.contains("xml") ? ContentType.XML
+                    : type.isEmpty() ? ContentType.NONE
+                    : ContentType.UNKNOWN;
+        }
+
+        private int targetEnd() {
+            return targetStart + target.length();
+        }
+
+        private String headerValue(String name) {
+            return headers.stream().filter(header -> header.name().equalsIgnoreCase(name)).map(HttpHeader::value).findFirst().orElse(null);
+        }
+    }
+
+    private static Object identity(Object proxy, String method, Object[] args, String description) {
+        return switch (method) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> description;
+            default -> unsupported(method);
+        };
+    }
+
+    private static Object unsupported(String method) {
+        throw new UnsupportedOperationException(method + " is not implemented by the Montoya fakes");
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeHttp.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
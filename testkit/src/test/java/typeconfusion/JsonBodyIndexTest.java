@@ -0,0 +1,103 @@
+package typeconfusion;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonBodyIndexTest {
+
+    @Test
+    void stringOffsetsIncludeTheQuotes() {
+        var body = bytes("{\"a\":\"x\",\"b\":12,\"c\":true,\"d\":null}");
+        var index = JsonBodyIndex.parse(body);
+
+        var a = index.find("a", "x").orElseThrow();
+        assertEquals(JsonBodyIndex.Type.STRING, a.type());
+        assertEquals("\"x\"", slice(body, a));
+        assertEquals("x", a.value());
+
+        assertEquals("12", slice(body, index.find("b", "12").orElseThrow()));
+        assertEquals(JsonBodyIndex.Type.NUMBER, index.find("b", "12").orElseThrow().type());
+        assertEquals(JsonBodyIndex.Type.BOOL, index.find("c", "true").orElseThrow().type());
+        assertEquals(JsonBodyIndex.Type.NULL, index.find("d", "null").orElseThrow().type());
+    }
+
+    @Test
+    void escapedStringsSpanTheirRawBytes() {
+        var body = bytes("{\"q\":\"a\\\"b\\\\c\",\"n\":1}");
+        var q = JsonBodyIndex.parse(body).find("q", "a\"b\\c").orElseThrow();
+
+        assertEquals("a\"b\\c", q.value());
+        assertEquals("\"a\\\"b\\\\c\"", slice(body, q));
+    }
+
+    @Test
+    void offsetsCountBytesOfMultibyteValues() {
+        var body = bytes("{\"name\":\"\u00e9\u20ac\",\"n\":1}");
+        var index = JsonBodyIndex.parse(body);
+
+        var name = index.find("name", "\u00e9\u20ac").orElseThrow();
+        assertEquals(8, name.valueStart());
+        assertEquals(15, name.valueEnd());
+        assertEquals("\"\u00e9\u20ac\"", slice(body, name));
+
+        var n = index.find("n", "1").orElseThrow();
+        assertEquals(20, n.valueStart());
+        assertEquals("1", slice(body, n));
+    }
+
+    @Test
+    void nestedArraysTakeTheNameOfTheirProperty() {
+        var body = bytes("{\"m\":[[1,2],[\"x\"]],\"o\":{\"k\":[{\"v\":3}]}}");
+        var index = JsonBodyIndex.parse(body);
+
+        var paths = index.byName("m").stream().map(JsonBodyIndex.Property::path).toList();
+        assertEquals(List.of("m[0][0]", "m[0][1]", "m[0]", "m[1][0]", "m[1]", "m"), paths);
+
+        var inner = index.byName("m").get(2);
+        assertEquals(JsonBodyIndex.Type.ARRAY, inner.type());
+        assertNull(inner.value());
+        assertEquals("[1,2]", slice(body, inner));
+
+        assertEquals("o.k[0].v", index.find("v", "3").orElseThrow().path());
+        assertEquals("[\"x\"]", slice(body, index.byName("m").get(4)));
+    }
+
+    @Test
+    void findPrefersTheDuplicateWithTheBaseValue() {
+        var index = JsonBodyIndex.parse(bytes("{\"user\":{\"id\":\"1\"},\"item\":{\"id\":\"2\"}}"));
+
+        assertEquals("item.id", index.find("id", "2").orElseThrow().path());
+        assertEquals("user.id", index.find("id", "3").orElseThrow().path());
+        assertTrue(index.find("missing", "1").isEmpty());
+    }
+
+    @Test
+    void atFindsTheScalarSpanningAnOffset() {
+        var body = bytes("{\"a\":{\"b\":\"xyz\"},\"c\":[7]}");
+        var index = JsonBodyIndex.parse(body);
+
+        assertEquals("a.b", index.at(new String(body, StandardCharsets.UTF_8).indexOf("xyz")).orElseThrow().path());
+        assertEquals("c[0]", index.at(new String(body, StandardCharsets.UTF_8).indexOf('7')).orElseThrow().path());
+        assertTrue(index.at(0).isEmpty());
+    }
+
+    @Test
+    void malformedBodiesAreEmpty() {
+        assertTrue(JsonBodyIndex.parse(bytes("{\"a\":")).properties().isEmpty());
+        assertTrue(JsonBodyIndex.parse(bytes("a=1&b=2")).properties().isEmpty());
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String slice(byte[] body, JsonBodyIndex.Property property) {
+        return new String(body, property.valueStart(), property.valueEnd() - property.valueStart(), StandardCharsets.UTF_8);
+    }
+}
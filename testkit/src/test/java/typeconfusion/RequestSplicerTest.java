@@ -0,0 +1,111 @@
+package typeconfusion;
+
+import burp.api.montoya.http.HttpService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestSplicerTest {
+
+    private static final HttpService SERVICE = FakeHttp.service("example.com", 443, true);
+
+    @BeforeAll
+    static void installObjectFactory() {
+        FakeHttp.installObjectFactory();
+    }
+
+    @Test
+    void headerOnlyEditKeepsContentLength() {
+        var raw = request("POST /search?q=1 HTTP/1.1", "a=2");
+        var splicer = splicer(raw);
+
+        var start = raw.indexOf("q=1") + 2;
+        var spliced = splicer.splice(start, start + 1, "123");
+
+        assertEquals(request("POST /search?q=123 HTTP/1.1", "a=2"), text(spliced));
+    }
+
+    @Test
+    void bodyEditRewritesContentLength() {
+        var raw = request("POST /search HTTP/1.1", "a=2&b=3");
+        var splicer = splicer(raw);
+
+        var start = raw.indexOf("a=2") + 2;
+        var spliced = splicer.splice(start, start + 1, "2222");
+
+        assertEquals(request("POST /search HTTP/1.1", "a=2222&b=3"), text(spliced));
+    }
+
+    @Test
+    void contentLengthCountsEscapedJsonBytes() {
+        var body = "{\"q\":\"x\"}";
+        var raw = request("POST /api HTTP/1.1", body);
+        var splicer = splicer(raw);
+
+        var start = raw.indexOf("\"x\"");
+        var spliced = splicer.splice(start, start + 3, "[\"a\\\"b\"]");
+
+        assertEquals(request("POST /api HTTP/1.1", "{\"q\":[\"a\\\"b\"]}"), text(spliced));
+    }
+
+    @Test
+    void contentLengthCountsMultibyteReplacementBytes() {
+        var raw = request("POST /api HTTP/1.1", "{\"q\":\"x\"}");
+        var splicer = splicer(raw);
+
+        var start = raw.indexOf("\"x\"");
+        var replacement = "[\"\u00e9\u20ac\"]".getBytes(StandardCharsets.UTF_8);
+        var spliced = splicer.splice(start, start + 3, replacement);
+
+        var body = "{\"q\":[\"\u00e9\u20ac\"]}";
+        var expected = "POST /api HTTP/1.1\r\nHost: example.com\r\nContent-Length: " + body.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + body;
+        assertEquals(expected, new String(spliced.request().toByteArray().getBytes(), StandardCharsets.UTF_8));
+        assertEquals(replacement.length, spliced.markers().get(0).range().endIndexExclusive() - spliced.markers().get(0).range().startIndexInclusive());
+    }
+
+    @Test
+    void contentLengthValueIsFoundCaseInsensitivelyAndTrimmed() {
+        var raw = "POST / HTTP/1.1\r\nhost: example.com\r\ncontent-length:  3 \r\n\r\na=1";
+        var splicer = splicer(raw);
+
+        var spliced = splicer.splice(raw.length() - 1, raw.length(), "12");
+
+        assertEquals("POST / HTTP/1.1\r\nhost: example.com\r\ncontent-length:  4 \r\n\r\na=12", text(spliced));
+    }
+
+    @Test
+    void markersFollowTheOrderOfTheEditsAcrossShifts() {
+        var raw = request("POST /p?u=1 HTTP/1.1", "a=2&b=3");
+        var splicer = splicer(raw);
+
+        var b = raw.indexOf("b=3") + 2;
+        var u = raw.indexOf("u=1") + 2;
+        var spliced = splicer.splice(List.of(
+                RequestSplicer.Edit.of(b, b + 1, "333"),
+                RequestSplicer.Edit.of(u, u + 1, "11")));
+
+        var text = text(spliced);
+        assertEquals(request("POST /p?u=11 HTTP/1.1", "a=2&b=333"), text);
+
+        var bMarker = spliced.markers().get(0).range();
+        var uMarker = spliced.markers().get(1).range();
+        assertEquals("333", text.substring(bMarker.startIndexInclusive(), bMarker.endIndexExclusive()));
+        assertEquals("11", text.substring(uMarker.startIndexInclusive(), uMarker.endIndexExclusive()));
+    }
+
+    private static String request(String requestLine, String body) {
+        return requestLine + "\r\nHost: example.com\r\nContent-Length: " + body.getBytes(StandardCharsets.ISO_8859_1).length + "\r\n\r\n" + body;
+    }
+
+    private static RequestSplicer splicer(String raw) {
+        return new RequestSplicer(SERVICE, FakeHttp.request(SERVICE, raw.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static String text(RequestSplicer.Spliced spliced) {
+        return new String(spliced.request().toByteArray().getBytes(), StandardCharsets.ISO_8859_1);
+    }
+}